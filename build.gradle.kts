@@ -97,5 +97,4 @@ tasks {
 
 dependencies {
 //    implementation("ar.com.hjg:pngj:2.1.0")
-    implementation("org.apache.xmlgraphics:batik-svggen:1.14")
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package vanstudio.sequence;
+
+import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.NonUrgentExecutor;
+import org.jetbrains.annotations.NotNull;
+import vanstudio.sequence.ui.BulkGenerateDialog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static vanstudio.sequence.util.MyNotifier.notifyInfo;
+
+/**
+ * Generate the diagrams of every public method of the selected files, packages or module into a directory.
+ */
+public class BulkGenerateAction extends AnAction {
+
+    @Override
+    public void update(@NotNull AnActionEvent event) {
+        event.getPresentation().setEnabled(event.getProject() != null && getRoots(event).length > 0);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null) return;
+        VirtualFile[] roots = getRoots(event);
+
+        ReadAction
+                .nonBlocking(() -> BulkGenerator.findEntryPoints(project, roots))
+                .inSmartMode(project)
+                .finishOnUiThread(ModalityState.defaultModalityState(), entryPoints -> {
+                    if (entryPoints.isEmpty()) {
+                        notifyInfo(project, "No public methods found");
+                        return;
+                    }
+                    BulkGenerateDialog dialog = new BulkGenerateDialog(project, entryPoints.size());
+                    if (!dialog.showAndGet()) return;
+
+                    File outputDir = dialog.getOutputDir();
+                    BulkGenerator generator = new BulkGenerator(project, outputDir, dialog.getFormats(), dialog.getThreads());
+                    ProgressManager.getInstance().run(new Task.Backgroundable(project, "Generating sequence diagrams", true) {
+                        private BulkGenerator.Result result;
+
+                        @Override
+                        public void run(@NotNull ProgressIndicator indicator) {
+                            indicator.setIndeterminate(false);
+                            try {
+                                Files.createDirectories(outputDir.toPath());
+                            } catch (IOException e) {
+                                throw new IllegalStateException("Cannot create " + outputDir, e);
+                            }
+                            result = generator.generate(entryPoints, indicator);
+                        }
+
+                        @Override
+                        public void onSuccess() {
+                            notifyInfo(project, result.getSummary());
+                        }
+
+                        @Override
+                        public void onThrowable(@NotNull Throwable error) {
+                            notifyInfo(project, "Generating sequence diagrams failed: " + error.getMessage());
+                        }
+                    });
+                })
+                .submit(NonUrgentExecutor.getInstance());
+    }
+
+    private static VirtualFile @NotNull [] getRoots(@NotNull AnActionEvent event) {
+        VirtualFile[] files = event.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        if (files != null && files.length > 0)
+            return files;
+        Module module = event.getData(LangDataKeys.MODULE_CONTEXT);
+        if (module != null)
+            return ModuleRootManager.getInstance(module).getSourceRoots(false);
+        return VirtualFile.EMPTY_ARRAY;
+    }
+}
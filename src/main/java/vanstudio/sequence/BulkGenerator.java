@@ -0,0 +1,307 @@
+package vanstudio.sequence;
+
+import com.intellij.concurrency.SensitiveProgressWrapper;
+import com.intellij.lang.Language;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.SmartPointerManager;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import vanstudio.sequence.diagram.Diagram;
+import vanstudio.sequence.formatter.IFormatter;
+import vanstudio.sequence.formatter.MermaidFormatter;
+import vanstudio.sequence.formatter.PlantUMLFormatter;
+import vanstudio.sequence.formatter.SdtFormatter;
+import vanstudio.sequence.openapi.ActionFinder;
+import vanstudio.sequence.openapi.GeneratorFactory;
+import vanstudio.sequence.openapi.SequenceParams;
+import vanstudio.sequence.openapi.model.CallStack;
+import vanstudio.sequence.openapi.model.MethodDescription;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates the diagrams of many entry points into files, e.g. of every public method of a package.
+ * <p>
+ * Generations run in parallel on a bounded pool, each in a non-blocking read action. They share
+ * the method filters of their language, loaded once, so the exclusions are compiled and their
+ * matches remembered once for the whole run.
+ */
+public class BulkGenerator {
+    private static final Logger LOGGER = Logger.getInstance(BulkGenerator.class);
+
+    public static final List<String> FORMATS = List.of("sdt", "puml", "mmd", "svg");
+    public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final String TIMINGS_FILE = "sequence-timings.csv";
+    private static final int SLOWEST_REPORTED = 3;
+
+    private final Project _project;
+    private final File _outputDir;
+    private final Set<String> _formats;
+    private final int _threads;
+    private final Map<Language, SequenceParams> _params = new ConcurrentHashMap<>();
+    private final Set<String> _fileNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param formats some of {@link #FORMATS}
+     * @param threads number of generations at once
+     */
+    public BulkGenerator(@NotNull Project project, @NotNull File outputDir, @NotNull Collection<String> formats, int threads) {
+        _project = project;
+        _outputDir = outputDir;
+        _formats = new LinkedHashSet<>(formats);
+        _threads = Math.max(1, threads);
+    }
+
+    /**
+     * Find the public methods of the source files under the roots. Called in a read action.
+     */
+    public static List<SmartPsiElementPointer<PsiElement>> findEntryPoints(@NotNull Project project, @NotNull VirtualFile[] roots) {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        PsiManager psiManager = PsiManager.getInstance(project);
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+        List<SmartPsiElementPointer<PsiElement>> entryPoints = new ArrayList<>();
+        Set<VirtualFile> visited = new HashSet<>();
+        for (VirtualFile root : roots) {
+            VfsUtilCore.iterateChildrenRecursively(root, fileIndex::isInSourceContent, file -> {
+                ProgressManager.checkCanceled();
+                if (file.isDirectory() || !visited.add(file))
+                    return true;
+                PsiFile psiFile = psiManager.findFile(file);
+                if (psiFile == null)
+                    return true;
+                ActionFinder actionFinder = ActionFinder.getInstance(psiFile.getLanguage());
+                if (actionFinder == null)
+                    return true;
+                for (PsiElement method : actionFinder.findPublicMethods(project, psiFile))
+                    entryPoints.add(pointerManager.createSmartPsiElementPointer(method));
+                return true;
+            });
+        }
+        return entryPoints;
+    }
+
+    /**
+     * Generate the diagrams of the entry points, waiting until all are written.
+     * @throws ProcessCanceledException if the indicator is cancelled
+     */
+    public Result generate(@NotNull List<SmartPsiElementPointer<PsiElement>> entryPoints, @NotNull ProgressIndicator indicator) {
+        Result result = new Result(entryPoints.size());
+        long start = System.nanoTime();
+        ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Sequence Diagram Bulk Generation", _threads);
+        List<Future<?>> futures = new ArrayList<>(entryPoints.size());
+        try {
+            for (SmartPsiElementPointer<PsiElement> entryPoint : entryPoints) {
+                futures.add(executor.submit(() -> generate(entryPoint, indicator, result)));
+            }
+            int done = 0;
+            for (Future<?> future : futures) {
+                while (true) {
+                    indicator.checkCanceled();
+                    try {
+                        future.get(100, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException ignored) {
+                    } catch (InterruptedException e) {
+                        throw new ProcessCanceledException(e);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof ProcessCanceledException)
+                            throw (ProcessCanceledException) e.getCause();
+                        break;
+                    }
+                }
+                indicator.setFraction((double) ++done / futures.size());
+            }
+        } finally {
+            for (Future<?> future : futures)
+                future.cancel(false);
+            executor.shutdown();
+        }
+        result._elapsedNanos = System.nanoTime() - start;
+        writeTimings(result);
+        if (LOGGER.isDebugEnabled()) {
+            _params.forEach((language, params) -> LOGGER.debug("Method filters of " + language.getID() + ":\n"
+                    + params.getMethodFilter().getStatistics()));
+        }
+        return result;
+    }
+
+    private void generate(SmartPsiElementPointer<PsiElement> entryPoint, ProgressIndicator indicator, Result result) {
+        long start = System.nanoTime();
+        String name = null;
+        try {
+            CallStack callStack = ProgressManager.getInstance().runProcess(
+                    () -> ReadAction.nonBlocking(() -> generate(entryPoint)).executeSynchronously(),
+                    new SensitiveProgressWrapper(indicator));
+            if (callStack == null || callStack.getMethod() == null) {
+                result._failures.add("Invalid " + entryPoint.getVirtualFile());
+                return;
+            }
+            name = uniqueFileName(callStack.getMethod());
+            indicator.setText2(name);
+            write(callStack, name);
+            result._timings.add(new Timing(name, System.nanoTime() - start));
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to generate " + (name != null ? name : entryPoint.getVirtualFile()), e);
+            result._failures.add((name != null ? name : String.valueOf(entryPoint.getVirtualFile())) + ": " + e.getMessage());
+        }
+    }
+
+    private CallStack generate(SmartPsiElementPointer<PsiElement> entryPoint) {
+        PsiElement element = entryPoint.getElement();
+        if (element == null || !element.isValid())
+            return null;
+        Language language = element.getLanguage();
+        SequenceParams params = _params.computeIfAbsent(language, key -> {
+            SequenceParams loaded = new SequenceParams();
+            GeneratorFactory.createGenerator(key, loaded);
+            return loaded;
+        });
+        return GeneratorFactory.createGeneratorForLoadedParams(language, params.withSharedMethodFilter())
+                .generate(element, null);
+    }
+
+    private void write(CallStack callStack, String name) throws IOException {
+        String sdt = null;
+        for (String format : _formats) {
+            File file = new File(_outputDir, name + '.' + format);
+            if ("svg".equals(format)) {
+                if (sdt == null)
+                    sdt = new SdtFormatter().format(callStack);
+                Diagram diagram = new Diagram();
+                diagram.build(sdt);
+                try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    diagram.writeSvg(out);
+                }
+            } else {
+                try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    getFormatter(format).format(callStack, out);
+                }
+            }
+        }
+    }
+
+    private static IFormatter getFormatter(String format) {
+        switch (format) {
+            case "puml":
+                return new PlantUMLFormatter();
+            case "mmd":
+                return new MermaidFormatter();
+            default:
+                return new SdtFormatter();
+        }
+    }
+
+    /**
+     * @return <code>package.Class.method</code>, followed by the simple names of the argument types,
+     * e.g. <code>package.Class.method-String-int</code>, so that overloads get the same files whatever
+     * order they are generated in. Only overloads whose argument types differ by package alone are
+     * numbered.
+     */
+    private String uniqueFileName(MethodDescription method) {
+        StringBuilder signature = new StringBuilder(method.getClassDescription().getClassName())
+                .append('.').append(method.getMethodName());
+        for (String argType : method.getArgTypes())
+            signature.append('-').append(simpleTypeName(argType));
+        String base = signature.toString().replaceAll("[^\\w.$-]", "_");
+        String name = base;
+        for (int i = 2; !_fileNames.add(name); ++i)
+            name = base + '_' + i;
+        return name;
+    }
+
+    /**
+     * @return <code>String</code> for <code>java.lang.String</code>, <code>List</code> for
+     * <code>java.util.List&lt;java.lang.String&gt;</code>, <code>Object[]</code> for <code>java.lang.Object...</code>
+     */
+    static String simpleTypeName(String type) {
+        String erased = type.replaceAll("<.*>", "").replace("...", "[]");
+        return erased.substring(erased.lastIndexOf('.') + 1);
+    }
+
+    private void writeTimings(Result result) {
+        List<Timing> timings = new ArrayList<>(result._timings);
+        timings.sort(Comparator.comparing(timing -> timing.name));
+        try (Writer out = Files.newBufferedWriter(new File(_outputDir, TIMINGS_FILE).toPath(), StandardCharsets.UTF_8)) {
+            out.write("diagram,millis\n");
+            for (Timing timing : timings)
+                out.write(timing.name + ',' + timing.nanos / 1_000_000 + '\n');
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write " + TIMINGS_FILE, e);
+        }
+    }
+
+    private static final class Timing {
+        final String name;
+        final long nanos;
+
+        Timing(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Outcome and timings of a bulk generation.
+     */
+    public static final class Result {
+        private final int _entryPoints;
+        private final Queue<Timing> _timings = new ConcurrentLinkedQueue<>();
+        private final Queue<String> _failures = new ConcurrentLinkedQueue<>();
+        private long _elapsedNanos;
+
+        private Result(int entryPoints) {
+            _entryPoints = entryPoints;
+        }
+
+        public int getDiagramCount() {
+            return _timings.size();
+        }
+
+        public List<String> getFailures() {
+            return new ArrayList<>(_failures);
+        }
+
+        /**
+         * @return the number of diagrams, throughput and slowest diagrams, as html
+         */
+        public String getSummary() {
+            double seconds = _elapsedNanos / 1e9;
+            StringBuilder summary = new StringBuilder();
+            summary.append(String.format("Generated %d of %d diagrams in %.1f s (%.1f per second)",
+                    _timings.size(), _entryPoints, seconds, seconds > 0 ? _timings.size() / seconds : 0.));
+            if (!_failures.isEmpty())
+                summary.append(", ").append(_failures.size()).append(" failed");
+            List<Timing> slowest = new ArrayList<>(_timings);
+            slowest.sort(Comparator.comparingLong((Timing timing) -> timing.nanos).reversed());
+            if (!slowest.isEmpty()) {
+                long total = 0;
+                for (Timing timing : slowest)
+                    total += timing.nanos;
+                summary.append(String.format("<br>Mean %d ms, slowest:", total / slowest.size() / 1_000_000));
+                for (Timing timing : slowest.subList(0, Math.min(SLOWEST_REPORTED, slowest.size())))
+                    summary.append(String.format(" %s %d ms", timing.name, timing.nanos / 1_000_000));
+            }
+            return summary.toString();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package vanstudio.sequence;
+
+import com.intellij.ide.impl.ProjectUtil;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.annotations.NotNull;
+import vanstudio.sequence.config.SequenceParamsState;
+import vanstudio.sequence.config.SequenceSettingsState;
+import vanstudio.sequence.openapi.ActionFinder;
+import vanstudio.sequence.openapi.SequenceParams;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Generate diagrams from the command line, without a window, e.g. to keep the diagrams of the
+ * documentation up to date in CI:
+ * <pre>
+ * idea sequence-diagrams [options] &lt;project dir&gt; &lt;output dir&gt; &lt;entry point&gt;...
+ * </pre>
+ * An entry point is a method <code>a.b.C#method</code>, the public methods of a class <code>a.b.C</code>,
+ * of a package <code>a.b.*</code> or of a package and its sub-packages <code>a.b.**</code>.
+ * The options of the generation and the settings, e.g. the exclusions, lambdas and colours, start
+ * from their defaults, not from those of the IDE, so that a run gives the same diagrams anywhere. The diagrams are generated in parallel by a
+ * {@link BulkGenerator}.
+ */
+public class GenerateDiagramsStarter implements ApplicationStarter {
+    private static final String COMMAND = "sequence-diagrams";
+    private static final String USAGE = "Usage: idea " + COMMAND + " [--formats=puml,mmd,sdt,svg] [--depth=5] [--threads=N]"
+            + " [--project-classes-only[=false]] [--no-getters-setters[=false]] [--no-private-methods] [--no-constructors]"
+            + " <project dir> <output dir> <a.b.C#method | a.b.C | a.b.* | a.b.**>...";
+
+    @Override
+    public String getCommandName() {
+        return COMMAND;
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public int getRequiredModality() {
+        return NOT_IN_EDT;
+    }
+
+    @Override
+    public void main(@NotNull List<String> args) {
+        int status;
+        try {
+            status = run(args.subList(1, args.size()));
+        } catch (Throwable e) {
+            e.printStackTrace();
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    private int run(List<String> args) throws IOException {
+        SequenceParamsState state = SequenceParamsState.getInstance();
+        SequenceParamsState saved = new SequenceParamsState();
+        saved.loadState(state);
+        state.loadState(new SequenceParamsState());
+        SequenceSettingsState settings = SequenceSettingsState.getInstance();
+        SequenceSettingsState savedSettings = new SequenceSettingsState();
+        savedSettings.loadState(settings);
+        settings.loadState(new SequenceSettingsState());
+        try {
+            return run(args, state);
+        } finally {
+            settings.loadState(savedSettings);
+            state.loadState(saved);
+        }
+    }
+
+    private int run(List<String> args, SequenceParamsState state) throws IOException {
+        List<String> formats = List.of("puml");
+        int threads = BulkGenerator.DEFAULT_THREADS;
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--formats=")) {
+                formats = Arrays.asList(arg.substring("--formats=".length()).split(","));
+                if (!BulkGenerator.FORMATS.containsAll(formats))
+                    return usage("Unknown format in " + arg);
+            } else if (arg.startsWith("--depth=")) {
+                state.callDepth = Integer.parseInt(arg.substring("--depth=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (isFlag(arg, "--project-classes-only")) {
+                state.projectClassesOnly = flagValue(arg);
+            } else if (isFlag(arg, "--no-getters-setters")) {
+                state.noGetterSetters = flagValue(arg);
+            } else if (isFlag(arg, "--no-private-methods")) {
+                state.noPrivateMethods = flagValue(arg);
+            } else if (isFlag(arg, "--no-constructors")) {
+                state.noConstructors = flagValue(arg);
+            } else if (arg.startsWith("--")) {
+                return usage("Unknown option " + arg);
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() < 3)
+            return usage(null);
+
+        Project project = ProjectUtil.openOrImport(new File(positional.get(0)).getAbsolutePath(), null, false);
+        if (project == null) {
+            System.err.println("Cannot open project " + positional.get(0));
+            return 1;
+        }
+        try {
+            DumbService.getInstance(project).waitForSmartMode();
+            List<String> entries = positional.subList(2, positional.size());
+            List<SmartPsiElementPointer<PsiElement>> entryPoints = ReadAction.compute(() -> findEntryPoints(project, entries));
+            if (entryPoints.isEmpty()) {
+                System.err.println("No method found for " + entries);
+                return 1;
+            }
+
+            File outputDir = new File(positional.get(1));
+            Files.createDirectories(outputDir.toPath());
+            BulkGenerator.Result result = new BulkGenerator(project, outputDir, formats, threads)
+                    .generate(entryPoints, new EmptyProgressIndicator());
+            System.out.println(result.getSummary().replace("<br>", "\n"));
+            for (String failure : result.getFailures())
+                System.err.println(failure);
+            return result.getFailures().isEmpty() ? 0 : 1;
+        } finally {
+            ApplicationManager.getApplication().invokeAndWait(() -> ProjectManagerEx.getInstanceEx().forceCloseProject(project));
+        }
+    }
+
+    private static List<SmartPsiElementPointer<PsiElement>> findEntryPoints(Project project, List<String> entries) {
+        JavaPsiFacade facade = JavaPsiFacade.getInstance(project);
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+        List<SmartPsiElementPointer<PsiElement>> entryPoints = new ArrayList<>();
+        for (String entry : entries) {
+            boolean recursive = entry.endsWith(SequenceParams.RECURSIVE_PACKAGE_INDICATOR);
+            if (recursive || entry.endsWith(SequenceParams.PACKAGE_INDICATOR)) {
+                String packageName = entry.substring(0, entry.lastIndexOf(recursive
+                        ? SequenceParams.RECURSIVE_PACKAGE_INDICATOR
+                        : SequenceParams.PACKAGE_INDICATOR));
+                PsiPackage psiPackage = facade.findPackage(packageName);
+                if (psiPackage == null) {
+                    System.err.println("No package " + packageName);
+                    continue;
+                }
+                List<VirtualFile> roots = new ArrayList<>();
+                for (PsiDirectory directory : psiPackage.getDirectories(scope)) {
+                    if (recursive)
+                        roots.add(directory.getVirtualFile());
+                    else
+                        for (PsiFile file : directory.getFiles())
+                            roots.add(file.getVirtualFile());
+                }
+                entryPoints.addAll(BulkGenerator.findEntryPoints(project, roots.toArray(VirtualFile.EMPTY_ARRAY)));
+                continue;
+            }
+
+            int hash = entry.indexOf('#');
+            String className = hash < 0 ? entry : entry.substring(0, hash);
+            PsiClass psiClass = facade.findClass(className, scope);
+            if (psiClass == null) {
+                System.err.println("No class " + className);
+                continue;
+            }
+            if (hash < 0) {
+                ActionFinder actionFinder = ActionFinder.getInstance(psiClass.getLanguage());
+                if (actionFinder != null)
+                    for (PsiElement method : actionFinder.findPublicMethods(project, psiClass))
+                        entryPoints.add(pointerManager.createSmartPsiElementPointer(method));
+            } else {
+                PsiMethod[] methods = psiClass.findMethodsByName(entry.substring(hash + 1), false);
+                if (methods.length == 0)
+                    System.err.println("No method " + entry);
+                for (PsiMethod method : methods)
+                    entryPoints.add(pointerManager.createSmartPsiElementPointer(method));
+            }
+        }
+        return entryPoints;
+    }
+
+    private static boolean isFlag(String arg, String name) {
+        return arg.equals(name) || arg.startsWith(name + '=');
+    }
+
+    /**
+     * @return true for <code>--flag</code>, the value for <code>--flag=false</code>
+     */
+    private static boolean flagValue(String arg) {
+        int equals = arg.indexOf('=');
+        return equals < 0 || Boolean.parseBoolean(arg.substring(equals + 1));
+    }
+
+    private static int usage(String error) {
+        if (error != null)
+            System.err.println(error);
+        System.err.println(USAGE);
+        return 2;
+    }
+}
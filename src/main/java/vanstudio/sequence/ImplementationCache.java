@@ -0,0 +1,91 @@
+package vanstudio.sequence;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import vanstudio.sequence.diagram.Info;
+import vanstudio.sequence.openapi.SequenceNavigable;
+import vanstudio.sequence.openapi.model.CallStack;
+import vanstudio.sequence.openapi.model.MethodDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * The implementations of the interfaces and abstract classes of a diagram, searched in the
+ * background once the diagram is generated, so that its context menu does not search on the
+ * event thread. One cache per generated diagram; the searches run one at a time.
+ */
+final class ImplementationCache {
+    private static final Logger LOGGER = Logger.getInstance(ImplementationCache.class);
+    private static final ExecutorService EXECUTOR =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Sequence Diagram Implementations", 1);
+
+    private final SequenceNavigable _navigable;
+    private final Map<String, CompletableFuture<List<String>>> _implementations = new ConcurrentHashMap<>();
+
+    ImplementationCache(SequenceNavigable navigable) {
+        _navigable = navigable;
+    }
+
+    /**
+     * Start searching the implementations of the interface and abstract participants of the call
+     * stack and of their methods, as offered by the context menu.
+     */
+    void prefetch(CallStack callStack) {
+        MethodDescription method = callStack.getMethod();
+        List<String> attributes = method.getClassDescription().getAttributes();
+        if ((attributes.contains(Info.INTERFACE_ATTRIBUTE) || attributes.contains(Info.ABSTRACT_ATTRIBUTE))
+                && !attributes.contains(Info.EXTERNAL_ATTRIBUTE)) {
+            String className = method.getClassDescription().getClassName();
+            getImplementations(className);
+            getImplementations(className, method.getMethodName(), method.getArgTypes());
+        }
+        for (CallStack call : callStack.getCalls())
+            prefetch(call);
+    }
+
+    /**
+     * @return the sorted names of the classes implementing the class, searched once
+     */
+    CompletableFuture<List<String>> getImplementations(String className) {
+        return _implementations.computeIfAbsent(className,
+                key -> search(() -> _navigable.findImplementations(className)));
+    }
+
+    /**
+     * @return the sorted names of the classes implementing the method, searched once
+     */
+    CompletableFuture<List<String>> getImplementations(String className, String methodName, List<String> argTypes) {
+        return _implementations.computeIfAbsent(className + '#' + methodName + argTypes,
+                key -> search(() -> _navigable.findImplementations(className, methodName, argTypes)));
+    }
+
+    /**
+     * Drop the searches not started yet, when the diagram is replaced.
+     */
+    void cancel() {
+        for (CompletableFuture<List<String>> implementations : _implementations.values())
+            implementations.cancel(false);
+    }
+
+    private static CompletableFuture<List<String>> search(Supplier<List<String>> search) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                List<String> implementations = new ArrayList<>(search.get());
+                implementations.sort(null);
+                return implementations;
+            } catch (ProcessCanceledException e) {
+                return List.of();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to find implementations", e);
+                return List.of();
+            }
+        }, EXECUTOR);
+    }
+}
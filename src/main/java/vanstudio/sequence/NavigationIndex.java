@@ -0,0 +1,210 @@
+package vanstudio.sequence;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Segment;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.psi.SmartPsiFileRange;
+import com.intellij.util.concurrency.NonUrgentExecutor;
+import org.jetbrains.annotations.Nullable;
+import vanstudio.sequence.diagram.Info;
+import vanstudio.sequence.openapi.model.CallStack;
+import vanstudio.sequence.util.MyPsiUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where the methods and calls of a generated diagram are in the source, by the sequence of their
+ * call link in the diagram.
+ * <p>
+ * The files and offsets are resolved from the smart pointers of the nodes by a low priority
+ * background task once the diagram is generated, so that navigating does not load the source.
+ * A place is used while its file is unchanged since it was resolved; once navigation finds an
+ * edited file, it goes through the smart pointers and the task resolves the places again.
+ */
+final class NavigationIndex {
+    static final NavigationIndex EMPTY = new NavigationIndex(new CallStack[0]);
+
+    /** nodes resolved per read action, so that a write action does not restart the whole task */
+    private static final int CHUNK = 256;
+
+    private final CallStack[] _nodes;
+    /** the places, and the modification stamps of their files when resolved, guarded by this */
+    private final VirtualFile[] _methodFiles;
+    private final int[] _methodOffsets;
+    private final long[] _methodStamps;
+    private final VirtualFile[] _callFiles;
+    private final int[] _callOffsets;
+    private final long[] _callStamps;
+    /** the next sequence to resolve, guarded by this */
+    private int _next;
+    /** whether the task runs, and whether it has to start over, guarded by this */
+    private boolean _prefetching;
+    private boolean _restart;
+    private volatile boolean _cancelled;
+
+    private NavigationIndex(CallStack[] nodes) {
+        _nodes = nodes;
+        _methodFiles = new VirtualFile[nodes.length];
+        _methodOffsets = new int[nodes.length];
+        _methodStamps = new long[nodes.length];
+        _callFiles = new VirtualFile[nodes.length];
+        _callOffsets = new int[nodes.length];
+        _callStamps = new long[nodes.length];
+    }
+
+    /**
+     * Index the nodes of the call stack as the diagram numbers its links: a call takes the next
+     * sequence, then its calls, then its return.
+     */
+    static NavigationIndex create(CallStack callStack) {
+        List<CallStack> nodes = new ArrayList<>();
+        index(callStack, nodes);
+        return new NavigationIndex(nodes.toArray(new CallStack[0]));
+    }
+
+    private static void index(CallStack callStack, List<CallStack> nodes) {
+        nodes.add(callStack);
+        for (CallStack call : callStack.getCalls())
+            index(call, nodes);
+        nodes.add(null);
+    }
+
+    /**
+     * @return the node called by the link, null for a return
+     */
+    @Nullable CallStack getNode(int seq) {
+        return seq >= 0 && seq < _nodes.length ? _nodes[seq] : null;
+    }
+
+    /**
+     * @return the offset of the node when it was generated
+     */
+    int getOffset(int seq) {
+        CallStack node = getNode(seq);
+        return node == null ? 0 : node.getMethod().getOffset();
+    }
+
+    /**
+     * Resolve the files and offsets in the background, a chunk at a time. If the task is running
+     * already, it starts over once the current chunk is done.
+     */
+    void prefetch(Project project) {
+        synchronized (this) {
+            _restart = true;
+            if (_prefetching)
+                return;
+            _prefetching = true;
+        }
+        submit(project);
+    }
+
+    private void submit(Project project) {
+        ReadAction
+                .nonBlocking(() -> resolve(project))
+                .expireWhen(() -> _cancelled || project.isDisposed())
+                .submit(NonUrgentExecutor.getInstance())
+                .onSuccess(more -> {
+                    if (more) submit(project);
+                })
+                .onError(e -> {
+                    synchronized (this) {
+                        _prefetching = false;
+                    }
+                });
+    }
+
+    void cancel() {
+        _cancelled = true;
+    }
+
+    /**
+     * @return true if there are nodes left to resolve
+     */
+    private boolean resolve(Project project) {
+        int from;
+        synchronized (this) {
+            if (_restart) {
+                _next = 0;
+                _restart = false;
+            }
+            from = _next;
+        }
+        int to = Math.min(from + CHUNK, _nodes.length);
+        for (int seq = from; seq < to; ++seq) {
+            ProgressManager.checkCanceled();
+            CallStack node = _nodes[seq];
+            // leave external methods to their pointers, their offset would decompile the class
+            if (node == null || node.getMethod().getClassDescription().getAttributes().contains(Info.EXTERNAL_ATTRIBUTE))
+                continue;
+
+            SmartPsiElementPointer<PsiElement> element = node.getElementPointer();
+            PsiElement psiElement = element == null ? null : element.getElement();
+            PsiFile methodFile = psiElement == null ? null : psiElement.getContainingFile();
+            int methodOffset = methodFile == null ? 0 : MyPsiUtil.findNaviOffset(psiElement);
+            SmartPsiFileRange callSite = node.getCallSitePointer();
+            Segment range = callSite == null ? null : callSite.getRange();
+            PsiFile callFile = range == null ? null : callSite.getContainingFile();
+            synchronized (this) {
+                _methodFiles[seq] = methodFile == null ? null : methodFile.getVirtualFile();
+                _methodOffsets[seq] = methodOffset;
+                _methodStamps[seq] = methodFile == null ? 0 : methodFile.getModificationStamp();
+                _callFiles[seq] = callFile == null ? null : callFile.getVirtualFile();
+                _callOffsets[seq] = callFile == null ? 0 : range.getStartOffset();
+                _callStamps[seq] = callFile == null ? 0 : callFile.getModificationStamp();
+            }
+        }
+        synchronized (this) {
+            _next = to;
+            _prefetching = to < _nodes.length || _restart;
+            return _prefetching;
+        }
+    }
+
+    /**
+     * Open the method called by the link if its place is resolved.
+     * @return false if not, to navigate through the pointers of the node instead
+     */
+    boolean openMethod(Project project, int seq) {
+        return open(project, seq, _methodFiles, _methodOffsets, _methodStamps);
+    }
+
+    /**
+     * Open the call of the link if its place is resolved.
+     * @return false if not, to navigate through the pointers of the node instead
+     */
+    boolean openCall(Project project, int seq) {
+        return open(project, seq, _callFiles, _callOffsets, _callStamps);
+    }
+
+    private boolean open(Project project, int seq, VirtualFile[] files, int[] offsets, long[] stamps) {
+        if (seq < 0 || seq >= _nodes.length)
+            return false;
+        VirtualFile file;
+        int offset;
+        long stamp;
+        synchronized (this) {
+            file = files[seq];
+            offset = offsets[seq];
+            stamp = stamps[seq];
+        }
+        if (file == null || !file.isValid())
+            return false;
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        if (psiFile == null || psiFile.getModificationStamp() != stamp) {
+            // the file was edited since, resolve the places again for the next time
+            prefetch(project);
+            return false;
+        }
+        FileEditorManager.getInstance(project).openTextEditor(new OpenFileDescriptor(project, file, offset), true);
+        return true;
+    }
+}
@@ -5,19 +5,30 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.progress.PerformInBackgroundOption;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.progress.impl.BackgroundableProcessIndicator;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.Segment;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiMethod;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.psi.SmartPsiFileRange;
 import com.intellij.ui.components.JBScrollBar;
 import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.ThrowableConsumer;
 import com.intellij.util.concurrency.NonUrgentExecutor;
 import com.intellij.util.ui.UIUtil;
 import icons.SequencePluginIcons;
 import vanstudio.sequence.config.ConfigListener;
 import vanstudio.sequence.config.SequenceParamsState;
+import vanstudio.sequence.formatter.IFormatter;
 import vanstudio.sequence.formatter.MermaidFormatter;
 import vanstudio.sequence.formatter.PlantUMLFormatter;
 import vanstudio.sequence.formatter.SdtFormatter;
@@ -26,7 +37,9 @@ import vanstudio.sequence.generator.filters.SingleClassFilter;
 import vanstudio.sequence.generator.filters.SingleMethodFilter;
 import vanstudio.sequence.openapi.*;
 import vanstudio.sequence.openapi.model.CallStack;
+import vanstudio.sequence.ui.ExportOptionsPanel;
 import vanstudio.sequence.ui.MyButtonlessScrollBarUI;
+import vanstudio.sequence.util.MyPsiUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.psi.KtFunction;
 import vanstudio.sequence.diagram.*;
@@ -37,9 +50,15 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.basic.BasicButtonUI;
 import java.awt.*;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
 
 import static vanstudio.sequence.util.MyPsiUtil.getFileChooser;
 
@@ -52,8 +71,14 @@ public class SequencePanel extends JPanel implements ConfigListener {
     private final SequenceParams _sequenceParams;
     private PsiElement psiElement;
     private String _titleName;
+    private static final int BIRD_VIEW_WIDTH = 120;
+
     private final JScrollPane _jScrollPane;
-    private final HashMap<String, Integer> navIndexMap = new HashMap<>();
+    private final PreviewPanel _birdView;
+    private volatile NavigationIndex _navIndex = NavigationIndex.EMPTY;
+    /** the last generated call stack, exported to PlantUML and Mermaid without generating again */
+    private volatile CallStack _callStack;
+    private volatile ImplementationCache _implementations;
     private GenerateFinishedListener finished = name -> {};
 
     public SequencePanel(Project project, PsiElement psiMethod) {
@@ -61,6 +86,7 @@ public class SequencePanel extends JPanel implements ConfigListener {
         this.project = project;
 
         navigable = SequenceNavigableFactory.INSTANCE.forLanguage(project, psiMethod.getLanguage());
+        _implementations = new ImplementationCache(navigable);
 
         psiElement = psiMethod;
         _sequenceParams = new SequenceParams();
@@ -96,6 +122,9 @@ public class SequencePanel extends JPanel implements ConfigListener {
         _jScrollPane.setCorner(JScrollPane.LOWER_RIGHT_CORNER, birdViewButton);
         add(_jScrollPane, BorderLayout.CENTER);
 
+        _birdView = new PreviewPanel(_jScrollPane, _display);
+        _birdView.setPreferredSize(new Dimension(BIRD_VIEW_WIDTH, 0));
+
     }
 
     public Model getModel() {
@@ -150,10 +179,14 @@ public class SequencePanel extends JPanel implements ConfigListener {
                         progressIndicator.processFinish();
                         return "Generate...";
                     }
-                    buildNaviIndex(callStack, "1");
+                    _callStack = callStack;
                     _titleName = callStack.getMethod().getTitleName();
+                    if (LOGGER.isDebugEnabled())
+                        LOGGER.debug("Method filters of " + _titleName + ":\n" + _sequenceParams.getMethodFilter().getStatistics());
                     String format = new SdtFormatter().format(callStack);
                     generate(format);
+                    setImplementations(callStack);
+                    setNavIndex(NavigationIndex.create(callStack));
                     progressIndicator.processFinish();
                     return _titleName;
                 })
@@ -164,33 +197,78 @@ public class SequencePanel extends JPanel implements ConfigListener {
 
     }
 
-    private void buildNaviIndex(CallStack callStack, String level) {
-        navIndexMap.put(level, callStack.getMethod().getOffset());
-        int i = 1;
-        for (CallStack call : callStack.getCalls()) {
-            buildNaviIndex(call, level + "." + i++);
-        }
+    /**
+     * Replace the implementations of the previous diagram by those of the call stack, searched in the background.
+     */
+    private void setImplementations(CallStack callStack) {
+        ImplementationCache implementations = new ImplementationCache(navigable);
+        if (callStack != null)
+            implementations.prefetch(callStack);
+        ImplementationCache previous = _implementations;
+        _implementations = implementations;
+        previous.cancel();
+    }
+
+    /**
+     * Replace the navigation index of the previous diagram, and resolve the new one in the background.
+     */
+    private void setNavIndex(NavigationIndex navIndex) {
+        NavigationIndex previous = _navIndex;
+        _navIndex = navIndex;
+        previous.cancel();
+        navIndex.prefetch(project);
     }
 
+    private int getNaviOffset(MethodInfo methodInfo) {
+        return _navIndex.getOffset(methodInfo.getStartSeq());
+    }
+
+    /**
+     * Format the last generated call stack, or generate it first if there is none yet.
+     * Generating needs a read action.
+     */
     public String generatePumlMmd(String ext) {
-        if (psiElement == null || !psiElement.isValid() || !(psiElement instanceof PsiMethod || psiElement instanceof KtFunction)) {
-            psiElement = null;
-            return "";
-        }
+        CallStack callStack = getOrGenerateCallStack();
+        return callStack == null ? "" : getFormatter(ext).format(callStack);
+    }
 
-        IGenerator generator = GeneratorFactory.createGenerator(psiElement.getLanguage(), _sequenceParams);
+    /**
+     * @return the last generated call stack, or a new one, generated in a read action, if there is none yet
+     */
+    private CallStack getOrGenerateCallStack() {
+        CallStack callStack = _callStack;
+        if (callStack != null)
+            return callStack;
+        return ReadAction.compute(() -> {
+            if (psiElement == null || !psiElement.isValid() || !(psiElement instanceof PsiMethod || psiElement instanceof KtFunction)) {
+                psiElement = null;
+                return null;
+            }
 
-        final CallStack callStack = generator.generate(psiElement, null);
+            IGenerator generator = GeneratorFactory.createGenerator(psiElement.getLanguage(), _sequenceParams);
+
+            return generator.generate(psiElement, null);
+        });
+    }
 
+    private static IFormatter getFormatter(String ext) {
         if ("mmd".equalsIgnoreCase(ext))
-            return new MermaidFormatter().format(callStack);
+            return new MermaidFormatter();
 
-        return new PlantUMLFormatter().format(callStack);
+        return new PlantUMLFormatter();
     }
 
+    /**
+     * Add or remove the bird view. It is removed rather than hidden, so that the overview is not
+     * rendered while it is not shown.
+     */
     private void showBirdView() {
-        PreviewFrame frame = new PreviewFrame(_jScrollPane, _display);
-        frame.setVisible(true);
+        if (_birdView.getParent() == null)
+            add(_birdView, BorderLayout.EAST);
+        else
+            remove(_birdView);
+        revalidate();
+        repaint();
     }
 
     public String getTitleName() {
@@ -223,6 +301,14 @@ public class SequencePanel extends JPanel implements ConfigListener {
     }
 
     private void gotoMethod(MethodInfo methodInfo) {
+        NavigationIndex navIndex = _navIndex;
+        if (navIndex.openMethod(project, methodInfo.getStartSeq()))
+            return;
+        CallStack callStack = navIndex.getNode(methodInfo.getStartSeq());
+        navigate(callStack == null ? null : callStack.getElementPointer(), () -> gotoMethodByName(methodInfo));
+    }
+
+    private void gotoMethodByName(MethodInfo methodInfo) {
         if (isLambdaCall(methodInfo)) {
             navigable.openLambdaExprInEditor(
                     methodInfo.getObjectInfo().getFullName(),
@@ -230,7 +316,7 @@ public class SequencePanel extends JPanel implements ConfigListener {
                     methodInfo.getArgTypes(),
                     methodInfo.getArgTypes(),
                     methodInfo.getReturnType(),
-                    navIndexMap.getOrDefault(methodInfo.getNumbering().getName(), 0)
+                    getNaviOffset(methodInfo)
             );
         } else {
             String className = methodInfo.getObjectInfo().getFullName();
@@ -251,6 +337,19 @@ public class SequencePanel extends JPanel implements ConfigListener {
             return;
         }
 
+        if (fromMethodInfo.getObjectInfo().hasAttribute(Info.INTERFACE_ATTRIBUTE) && fromMethodInfo.hasAttribute(Info.ABSTRACT_ATTRIBUTE)) {
+            gotoMethod(toMethodInfo);
+            return;
+        }
+
+        NavigationIndex navIndex = _navIndex;
+        if (navIndex.openCall(project, toMethodInfo.getStartSeq()))
+            return;
+        CallStack callStack = navIndex.getNode(toMethodInfo.getStartSeq());
+        navigate(callStack == null ? null : callStack.getCallSitePointer(), () -> gotoCallByName(fromMethodInfo, toMethodInfo));
+    }
+
+    private void gotoCallByName(MethodInfo fromMethodInfo, MethodInfo toMethodInfo) {
         if (isLambdaCall(toMethodInfo)) {
             navigable.openLambdaExprInEditor(
                     fromMethodInfo.getObjectInfo().getFullName(),
@@ -258,7 +357,7 @@ public class SequencePanel extends JPanel implements ConfigListener {
                     fromMethodInfo.getArgTypes(),
                     toMethodInfo.getArgTypes(),
                     toMethodInfo.getReturnType(),
-                    navIndexMap.getOrDefault(toMethodInfo.getNumbering().getName(), 0)
+                    getNaviOffset(toMethodInfo)
             );
         } else if (isLambdaCall(fromMethodInfo)) {
             LambdaExprInfo lambdaExprInfo = (LambdaExprInfo) fromMethodInfo;
@@ -271,10 +370,8 @@ public class SequencePanel extends JPanel implements ConfigListener {
                     toMethodInfo.getObjectInfo().getFullName(),
                     toMethodInfo.getRealName(),
                     toMethodInfo.getArgTypes(),
-                    navIndexMap.getOrDefault(toMethodInfo.getNumbering().getName(), 0)
+                    getNaviOffset(toMethodInfo)
             );
-        } else if (fromMethodInfo.getObjectInfo().hasAttribute(Info.INTERFACE_ATTRIBUTE) && fromMethodInfo.hasAttribute(Info.ABSTRACT_ATTRIBUTE)) {
-            gotoMethod(toMethodInfo);
         } else {
             navigable.openMethodCallInEditor(
                     fromMethodInfo.getObjectInfo().getFullName(),
@@ -283,11 +380,41 @@ public class SequencePanel extends JPanel implements ConfigListener {
                     toMethodInfo.getObjectInfo().getFullName(),
                     toMethodInfo.getRealName(),
                     toMethodInfo.getArgTypes(),
-                    navIndexMap.getOrDefault(toMethodInfo.getNumbering().getName(), 0)
+                    getNaviOffset(toMethodInfo)
             );
         }
     }
 
+    /**
+     * Open the source recorded when the diagram was generated, or look it up by name if there is
+     * none or it was deleted since.
+     */
+    private void navigate(SmartPsiElementPointer<? extends PsiElement> pointer, Runnable byName) {
+        if (pointer == null) {
+            byName.run();
+            return;
+        }
+        ReadAction
+                .nonBlocking(() -> {
+                    VirtualFile virtualFile = pointer.getVirtualFile();
+                    if (virtualFile == null || !virtualFile.isValid()) return null;
+
+                    if (pointer instanceof SmartPsiFileRange) {
+                        Segment range = pointer.getRange();
+                        return range == null ? null : new Pair<>(virtualFile, range.getStartOffset());
+                    }
+                    PsiElement element = pointer.getElement();
+                    return element == null ? null : new Pair<>(virtualFile, MyPsiUtil.findNaviOffset(element));
+                })
+                .finishOnUiThread(ModalityState.defaultModalityState(), p -> {
+                    if (p == null)
+                        byName.run();
+                    else
+                        FileEditorManager.getInstance(project).openTextEditor(new OpenFileDescriptor(project, p.first, p.second), true);
+                })
+                .submit(NonUrgentExecutor.getInstance());
+    }
+
     private boolean isLambdaCall(MethodInfo methodInfo) {
         return Objects.equals(methodInfo.getRealName(), Constants.Lambda_Invoke);
     }
@@ -328,6 +455,8 @@ public class SequencePanel extends JPanel implements ConfigListener {
             fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("PNG (.png) File", "png"));
             fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("TIF/TIFF (.tif) File", "tif"));
             fileChooser.setAcceptAllFileFilterUsed(false);
+            ExportOptionsPanel options = new ExportOptionsPanel(fileChooser, _display.hasSelectedCall());
+            fileChooser.setAccessory(options);
 
             try {
                 if (fileChooser.showSaveDialog(SequencePanel.this) == JFileChooser.APPROVE_OPTION) {
@@ -337,7 +466,29 @@ public class SequencePanel extends JPanel implements ConfigListener {
 
                     File fileToSave = new File(selectedFile.getParentFile(), selectedFile.getName() + '.' + extension);
 
-                    _display.saveImageToSvgFile(fileToSave, extension);
+                    Display display = getExportDisplay(options);
+                    if (display == null) {
+                        String message = options.getScope() == ExportOptionsPanel.Scope.CALLS
+                                ? "No calls " + options.getCalls()
+                                : "Nothing to export";
+                        JOptionPane.showMessageDialog(SequencePanel.this, message, "Export", JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+                    int pageHeight = options.getPageHeight();
+                    runExport(fileToSave, false, indicator -> {
+                        DoubleConsumer progress = fraction -> {
+                            indicator.checkCanceled();
+                            indicator.setFraction(fraction);
+                        };
+                        try {
+                            if ("png".equals(extension))
+                                display.saveImageToPngFile(fileToSave, pageHeight, progress);
+                            else
+                                display.saveImageToSvgFile(fileToSave, extension, progress);
+                        } finally {
+                            SwingUtilities.invokeLater(display::dispose);
+                        }
+                    });
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -345,6 +496,23 @@ public class SequencePanel extends JPanel implements ConfigListener {
             }
         }
 
+        /**
+         * @return a display of a copy of the whole diagram or of a slice of it, exported in the
+         *         background while the diagram shown may change, null if the calls are not found
+         */
+        private Display getExportDisplay(ExportOptionsPanel options) {
+            switch (options.getScope()) {
+                case VISIBLE:
+                    return _display.sliceVisible();
+                case SELECTION:
+                    return _display.sliceSelection();
+                case CALLS:
+                    return _display.sliceCalls(options.getCalls());
+                default:
+                    return _display.sliceAll();
+            }
+        }
+
         @Override
         public void update(@NotNull AnActionEvent e) {
             e.getPresentation().setEnabled(_display.getDiagram().nonEmpty());
@@ -363,6 +531,9 @@ public class SequencePanel extends JPanel implements ConfigListener {
             if (returnVal == JFileChooser.APPROVE_OPTION) {
                 File file = chooser.getSelectedFile();
                 _titleName = file.getName();
+                _callStack = null;
+                setNavIndex(NavigationIndex.EMPTY);
+                setImplementations(null);
                 _model.readFromFile(file);
             }
 
@@ -434,10 +605,16 @@ public class SequencePanel extends JPanel implements ConfigListener {
                     FileFilter fileFilter = fileChooser.getFileFilter();
                     String extension = ((FileNameExtensionFilter) fileFilter).getExtensions()[0];
 
-                    String uml = generatePumlMmd(extension);
-
                     File fileToSave = new File(selectedFile.getParentFile(), selectedFile.getName() + '.' + extension);
-                    FileUtil.writeToFile(fileToSave, uml);
+                    runExport(fileToSave, true, indicator -> {
+                        CallStack callStack = getOrGenerateCallStack();
+                        if (callStack == null)
+                            return;
+                        indicator.checkCanceled();
+                        try (Writer out = Files.newBufferedWriter(fileToSave.toPath(), StandardCharsets.UTF_8)) {
+                            getFormatter(extension).format(callStack, out);
+                        }
+                    });
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -447,10 +624,34 @@ public class SequencePanel extends JPanel implements ConfigListener {
 
         @Override
         public void update(@NotNull AnActionEvent e) {
-            e.getPresentation().setEnabled(psiElement != null);
+            e.getPresentation().setEnabled(_callStack != null || psiElement != null);
         }
     }
 
+    /**
+     * Run an export as a background task which can be cancelled, showing errors when it is done.
+     * @param indeterminate false if the export reports its progress with fractions
+     */
+    private void runExport(File file, boolean indeterminate, ThrowableConsumer<ProgressIndicator, IOException> export) {
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Exporting " + file.getName(), true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(indeterminate);
+                try {
+                    export.consume(indicator);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                LOGGER.warn("Export to " + file + " failed", error);
+                Throwable cause = error instanceof UncheckedIOException ? error.getCause() : error;
+                JOptionPane.showMessageDialog(SequencePanel.this, cause.getMessage(), "Exception", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
 
     private class GotoSourceAction extends AnAction {
         private final ScreenObject _screenObject;
@@ -513,6 +714,33 @@ public class SequencePanel extends JPanel implements ConfigListener {
         }
     }
 
+    private class FoldAction extends AnAction {
+        private final DisplayMethod _displayMethod;
+
+        public FoldAction(DisplayMethod displayMethod) {
+            super(displayMethod.isFolded() ? "Expand Calls" : "Collapse Calls");
+            _displayMethod = displayMethod;
+        }
+
+        public void actionPerformed(@NotNull AnActionEvent anActionEvent) {
+            _display.setFolded(_displayMethod, !_displayMethod.isFolded());
+        }
+    }
+
+    private static class SearchingImplementationsAction extends AnAction {
+        public SearchingImplementationsAction() {
+            super("Searching implementations...");
+        }
+
+        public void actionPerformed(@NotNull AnActionEvent anActionEvent) {
+        }
+
+        @Override
+        public void update(@NotNull AnActionEvent e) {
+            e.getPresentation().setEnabled(false);
+        }
+    }
+
     private class ExpendInterfaceAction extends AnAction {
         private final String face;
         private final String impl;
@@ -548,6 +776,7 @@ public class SequencePanel extends JPanel implements ConfigListener {
 
         public void displayMenuForScreenObject(ScreenObject screenObject, int x, int y) {
             DefaultActionGroup actionGroup = new DefaultActionGroup("SequencePopup", true);
+            CompletableFuture<List<String>> implementations = null;
             actionGroup.add(new GotoSourceAction(screenObject));
             if (screenObject instanceof DisplayObject) {
                 DisplayObject displayObject = (DisplayObject) screenObject;
@@ -556,12 +785,13 @@ public class SequencePanel extends JPanel implements ConfigListener {
                         && !displayObject.getObjectInfo().hasAttribute(Info.EXTERNAL_ATTRIBUTE)
                         /*&& !_sequenceParams.isSmartInterface()*/) {
                     String className = displayObject.getObjectInfo().getFullName();
-                    List<String> impls = navigable.findImplementations(className);
-                    actionGroup.addSeparator();
-                    impls.stream().sorted().forEach(impl -> actionGroup.add(new ExpendInterfaceAction(className, impl)));
+                    implementations = _implementations.getImplementations(className);
+                    addImplementations(actionGroup, className, implementations);
                 }
             } else if (screenObject instanceof DisplayMethod) {
                 DisplayMethod displayMethod = (DisplayMethod) screenObject;
+                if (displayMethod.hasCalls())
+                    actionGroup.add(new FoldAction(displayMethod));
                 actionGroup.add(new RemoveMethodAction(displayMethod.getMethodInfo()));
                 if ((displayMethod.getObjectInfo().hasAttribute(Info.INTERFACE_ATTRIBUTE) || displayMethod.getObjectInfo().hasAttribute(Info.ABSTRACT_ATTRIBUTE))
                         && !displayMethod.getObjectInfo().hasAttribute(Info.EXTERNAL_ATTRIBUTE)
@@ -570,10 +800,8 @@ public class SequencePanel extends JPanel implements ConfigListener {
                     String className = displayMethod.getObjectInfo().getFullName();
                     String methodName = displayMethod.getMethodInfo().getRealName();
                     List<String> argTypes = displayMethod.getMethodInfo().getArgTypes();
-                    List<String> impls = navigable.findImplementations(className, methodName, argTypes);
-
-                    actionGroup.addSeparator();
-                    impls.stream().sorted().forEach(impl -> actionGroup.add(new ExpendInterfaceAction(className, impl)));
+                    implementations = _implementations.getImplementations(className, methodName, argTypes);
+                    addImplementations(actionGroup, className, implementations);
                 }
             } else if (screenObject instanceof DisplayLink) {
                 DisplayLink displayLink = (DisplayLink) screenObject;
@@ -583,7 +811,29 @@ public class SequencePanel extends JPanel implements ConfigListener {
             ActionPopupMenu actionPopupMenu = ActionManager.getInstance().
                     createActionPopupMenu("SequenceDiagram.Popup", actionGroup);
             Component invoker = screenObject instanceof DisplayObject ? _display.getHeader() : _display;
-            actionPopupMenu.getComponent().show(invoker, x, y);
+            JPopupMenu popupMenu = actionPopupMenu.getComponent();
+            popupMenu.show(invoker, x, y);
+
+            // fill in the implementations when their search is done, if the menu is still open
+            if (implementations != null && !implementations.isDone()) {
+                implementations.whenComplete((impls, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error == null && popupMenu.isVisible()) {
+                        popupMenu.setVisible(false);
+                        displayMenuForScreenObject(screenObject, x, y);
+                    }
+                }));
+            }
+        }
+
+        private void addImplementations(DefaultActionGroup actionGroup, String className,
+                                        CompletableFuture<List<String>> implementations) {
+            actionGroup.addSeparator();
+            if (!implementations.isDone()) {
+                actionGroup.add(new SearchingImplementationsAction());
+            } else if (!implementations.isCompletedExceptionally()) {
+                for (String impl : implementations.join())
+                    actionGroup.add(new ExpendInterfaceAction(className, impl));
+            }
         }
     }
 
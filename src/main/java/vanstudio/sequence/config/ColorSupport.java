@@ -1,6 +1,7 @@
 package vanstudio.sequence.config;
 
 import com.intellij.ui.JBColor;
+import vanstudio.sequence.util.NameMatcher;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -17,11 +18,9 @@ public class ColorSupport {
     public static Optional<Paint> lookupMappedColorFor(SequenceSettingsState sequenceSettingsState, String fullName) {
         final List<ColorMapEntry> colorMappings = sequenceSettingsState.getColorMappingList();
         if(colorMappings!=null) {
-            return sequenceSettingsState.getColorMappingList()
-                    .stream()
-                    .filter(entry->entry.matches(fullName))
-                    .findFirst()
-                    .map(ColorMapEntry::getColor);
+            int index = sequenceSettingsState.getColorMatcher().match(fullName);
+            if(index != NameMatcher.NO_MATCH && index < colorMappings.size())
+                return Optional.ofNullable(colorMappings.get(index).getColor());
         }
         return Optional.empty();
     }
@@ -55,6 +55,7 @@ public class SequenceSettingsComponent implements ActionListener {
     private JCheckBox _showSimplifyCallName;
     private JCheckBox _showLambdaCall;
     private JCheckBox _smartInterface;
+    private JCheckBox _optimizeParticipantOrder;
 
     private final ExcludeTableModel _excludeTableModel;
     private final ColorMapTableModel _colorMapTableModel;
@@ -133,6 +134,8 @@ public class SequenceSettingsComponent implements ActionListener {
         if(sequenceSettingsState.SMART_INTERFACE != _smartInterface.isSelected()) {
             return true;
         }
+        if(sequenceSettingsState.OPTIMIZE_PARTICIPANT_ORDER != _optimizeParticipantOrder.isSelected())
+            return true;
         if(sequenceSettingsState.USE_3D_VIEW != _use3dView.isSelected())
             return true;
         if(!Objects.equals(_fontName.getSelectedItem(), sequenceSettingsState.FONT_NAME))
@@ -158,6 +161,7 @@ public class SequenceSettingsComponent implements ActionListener {
         sequenceSettingsState.SHOW_SIMPLIFY_CALL_NAME = _showSimplifyCallName.isSelected();
         sequenceSettingsState.SHOW_LAMBDA_CALL = _showLambdaCall.isSelected();
         sequenceSettingsState.SMART_INTERFACE = _smartInterface.isSelected();
+        sequenceSettingsState.OPTIMIZE_PARTICIPANT_ORDER = _optimizeParticipantOrder.isSelected();
         sequenceSettingsState.USE_3D_VIEW = _use3dView.isSelected();
         sequenceSettingsState.FONT_NAME = (String)_fontName.getSelectedItem();
         sequenceSettingsState.FONT_SIZE = Integer.parseInt(((String) Objects.requireNonNull(_fondSize.getSelectedItem())));
@@ -177,6 +181,7 @@ public class SequenceSettingsComponent implements ActionListener {
         _showSimplifyCallName.setSelected(sequenceSettingsState.SHOW_SIMPLIFY_CALL_NAME);
         _showLambdaCall.setSelected(sequenceSettingsState.SHOW_LAMBDA_CALL);
         _smartInterface.setSelected(SequenceSettingsState.getInstance().SMART_INTERFACE);
+        _optimizeParticipantOrder.setSelected(sequenceSettingsState.OPTIMIZE_PARTICIPANT_ORDER);
         _use3dView.setSelected(sequenceSettingsState.USE_3D_VIEW);
         _fontName.setSelectedItem(sequenceSettingsState.FONT_NAME);
         _fondSize.setSelectedItem(String.valueOf(sequenceSettingsState.FONT_SIZE));
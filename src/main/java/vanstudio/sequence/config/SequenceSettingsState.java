@@ -10,6 +10,7 @@ import com.intellij.util.xmlb.annotations.OptionTag;
 import com.intellij.util.xmlb.annotations.Transient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import vanstudio.sequence.util.NameMatcher;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -35,6 +36,7 @@ public class SequenceSettingsState implements PersistentStateComponent<SequenceS
     public boolean SHOW_SIMPLIFY_CALL_NAME = true;
     public boolean SHOW_LAMBDA_CALL = true;
     public boolean SMART_INTERFACE = true;
+    public boolean OPTIMIZE_PARTICIPANT_ORDER = false;
     public String FONT_NAME = "Dialog";
     public int FONT_SIZE = 11;
 
@@ -42,6 +44,8 @@ public class SequenceSettingsState implements PersistentStateComponent<SequenceS
     private final List<ConfigListener> _listeners = new ArrayList<>();
     private java.util.List<ExcludeEntry> _excludeList = new Vector<>();
     private java.util.List<ColorMapEntry> _colorMappingList = new Vector<>();
+    @Transient
+    private volatile NameMatcher _colorMatcher;
 
     public SequenceSettingsState() {}
 
@@ -71,6 +75,23 @@ public class SequenceSettingsState implements PersistentStateComponent<SequenceS
 
     public void setColorMappingList(List<ColorMapEntry> colorMappingList) {
         this._colorMappingList = colorMappingList;
+        _colorMatcher = null;
+    }
+
+    /**
+     * @return the patterns of the colour mapping in one matcher, the id of a rule is its index in the list
+     */
+    @Transient
+    public NameMatcher getColorMatcher() {
+        NameMatcher matcher = _colorMatcher;
+        if (matcher == null) {
+            NameMatcher.Builder builder = new NameMatcher.Builder();
+            for (ColorMapEntry colorMapEntry : _colorMappingList) {
+                builder.addWildcard(colorMapEntry.getRegex());
+            }
+            _colorMatcher = matcher = builder.build();
+        }
+        return matcher;
     }
 
     public void fireConfigChanged() {
@@ -88,6 +109,7 @@ public class SequenceSettingsState implements PersistentStateComponent<SequenceS
     @Override
     public void loadState(@NotNull SequenceSettingsState sequenceSettingsState) {
         XmlSerializerUtil.copyBean(sequenceSettingsState, this);
+        _colorMatcher = null;
     }
 
 
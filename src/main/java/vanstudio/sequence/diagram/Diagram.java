@@ -1,233 +1,697 @@
 package vanstudio.sequence.diagram;
 
 import com.intellij.openapi.diagnostic.Logger;
+import vanstudio.sequence.config.SequenceSettingsState;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.DoubleConsumer;
 
 public class Diagram {
     private static final Logger LOGGER = Logger.getInstance(Diagram.class);
 
-    private final List<DisplayObject> _objectLifeLines = Collections.synchronizedList(new ArrayList<>());
-    private final List<DisplayLink> _links = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * Above this many links the diagram is laid out in virtual mode: columns are widened with
+     * estimated label widths and labels are only measured when their row is painted.
+     */
+    static final int VIRTUAL_LAYOUT_THRESHOLD = 10000;
+    private static final String WIDTH_SAMPLE = "abcdefghijklmnopqrstuvwxyz()";
+    private static final long PARTICIPANT_ORDER_TIME_LIMIT = 200;
+    /** space around the diagram, in pixels */
+    static final int DEFAULT_INSET = 5;
+
+    private static final AtomicReferenceFieldUpdater<Diagram, Snapshot> SNAPSHOT =
+            AtomicReferenceFieldUpdater.newUpdater(Diagram.class, Snapshot.class, "_snapshot");
+
+    /**
+     * Build publishes a new snapshot here from any thread, e.g. the generation in the background.
+     * Layout and folding, on the EDT, copy the snapshot and publish the result only if no build
+     * came in between. Painting, hit-testing and export read whatever snapshot is current without
+     * locking.
+     */
+    private volatile Snapshot _snapshot = new Snapshot(new DisplayObject[0], new DisplayLink[0], false);
 
     public Diagram() {
     }
 
     public void build(String queryString) {
-        _objectLifeLines.clear();
-        _links.clear();
-
         Parser p = new Parser();
         try {
             p.parse(queryString);
         } catch (IOException ioe) {
             LOGGER.error("IOException", ioe);
+            _snapshot = new Snapshot(new DisplayObject[0], new DisplayLink[0], false);
             return;
         }
 
         List<ObjectInfo> theObjects = p.getObjects();
+        if (SequenceSettingsState.getInstance().OPTIMIZE_PARTICIPANT_ORDER)
+            ParticipantOrderOptimizer.optimize(theObjects, p.getLinks(), PARTICIPANT_ORDER_TIME_LIMIT);
+        DisplayObject[] objectLifeLines = new DisplayObject[theObjects.size()];
         for (ObjectInfo objectInfo : theObjects) {
-            _objectLifeLines.add(new DisplayObject(objectInfo));
+            objectLifeLines[objectInfo.getSeq()] = new DisplayObject(objectInfo);
         }
 
         List<Link> theDisplayLinks = p.getLinks();
-        int seq = 0;
-        synchronized (_objectLifeLines) {
-            for (Link link : theDisplayLinks) {
-                int fromSeq = link.getFrom().getSeq();
-                int toSeq = link.getTo().getSeq();
-                DisplayObject fromObj = _objectLifeLines.get(fromSeq);
-                DisplayObject toObj = _objectLifeLines.get(toSeq);
-                DisplayLink displayLink = null;
-                if (link instanceof Call) {
-                    if (fromSeq == toSeq)
-                        displayLink = new DisplaySelfCall(link, fromObj, toObj, seq);
-                    else
-                        displayLink = new DisplayCall(link, fromObj, toObj, seq);
-                } else if (link instanceof CallReturn) {
-                    if (fromSeq == toSeq)
-                        displayLink = new DisplaySelfCallReturn(link, fromObj, toObj, seq);
-                    else
-                        displayLink = new DisplayCallReturn(link, fromObj, toObj, seq);
-                } else {
-                    LOGGER.error("Unknown link: " + link);
-                }
-                if (displayLink != null) {
-                    _links.add(displayLink);
-                    ++seq;
+        List<DisplayLink> links = new ArrayList<>(theDisplayLinks.size());
+        for (Link link : theDisplayLinks) {
+            DisplayObject fromObj = objectLifeLines[link.getFrom().getSeq()];
+            DisplayObject toObj = objectLifeLines[link.getTo().getSeq()];
+            DisplayLink displayLink = createLink(link, fromObj, toObj, links.size());
+            if (displayLink != null)
+                links.add(displayLink);
+        }
+
+        for (ObjectInfo info : theObjects) {
+            DisplayObject displayInfo = objectLifeLines[info.getSeq()];
+            for (MethodInfo methodInfo : info.getMethods()) {
+                int startSeq = methodInfo.getStartSeq();
+                int endSeq = methodInfo.getEndSeq();
+                if ((startSeq < links.size()) && (endSeq < links.size())) {
+                    DisplayMethod methodBox = new DisplayMethod(info, methodInfo,
+                            links.get(startSeq), links.get(endSeq));
+                    displayInfo.addMethod(methodBox);
                 }
             }
+            displayInfo.seal();
         }
 
-        synchronized (_objectLifeLines) {
-            for (ObjectInfo info : theObjects) {
-                DisplayObject displayInfo = _objectLifeLines.get(info.getSeq());
-                for (MethodInfo methodInfo : info.getMethods()) {
-                    int startSeq = methodInfo.getStartSeq();
-                    int endSeq = methodInfo.getEndSeq();
-                    if ((startSeq < _links.size()) && (endSeq < _links.size())) {
-                        DisplayMethod methodBox = new DisplayMethod(info, methodInfo,
-                                _links.get(startSeq), _links.get(endSeq));
-                        displayInfo.addMethod(methodBox);
-                    }
-                }
+        _snapshot = new Snapshot(objectLifeLines, links.toArray(new DisplayLink[0]),
+                links.size() > VIRTUAL_LAYOUT_THRESHOLD);
+    }
+
+    private static DisplayLink createLink(Link link, DisplayObject fromObj, DisplayObject toObj, int seq) {
+        boolean self = fromObj == toObj;
+        if (link instanceof Call)
+            return self ? new DisplaySelfCall(link, fromObj, toObj, seq) : new DisplayCall(link, fromObj, toObj, seq);
+        if (link instanceof CallReturn)
+            return self ? new DisplaySelfCallReturn(link, fromObj, toObj, seq) : new DisplayCallReturn(link, fromObj, toObj, seq);
+        LOGGER.error("Unknown link: " + link);
+        return null;
+    }
+
+    /**
+     * Build a diagram of the links <code>firstSeq</code> to <code>lastSeq</code> only, e.g. to
+     * export part of a long diagram. Only the lifelines the slice touches are kept, activations
+     * open at its edges are cut there, and folded calls stay folded. Building and laying out the
+     * slice depend on its size only.
+     *
+     * @return the slice, not laid out
+     */
+    public Diagram slice(int firstSeq, int lastSeq) {
+        Snapshot snapshot = _snapshot;
+        DisplayLink[] links = snapshot.links;
+        int first = Math.max(0, firstSeq);
+        int last = Math.min(links.length - 1, lastSeq);
+        Diagram slice = new Diagram();
+        if (first > last)
+            return slice;
+
+        DisplayObject[] objects = snapshot.objects;
+        boolean[] touched = new boolean[objects.length];
+        for (int seq = first; seq <= last; ++seq) {
+            touched[links[seq].getFrom().getSeq()] = true;
+            touched[links[seq].getTo().getSeq()] = true;
+        }
+        List<DisplayObject> sliceObjects = new ArrayList<>();
+        List<List<DisplayMethod>> sliceMethods = new ArrayList<>();
+        DisplayObject[] column = new DisplayObject[objects.length];
+        for (DisplayObject displayObject : objects) {
+            List<DisplayMethod> methods = displayObject.getMethods(first, last);
+            if (!touched[displayObject.getSeq()] && methods.isEmpty())
+                continue;
+            column[displayObject.getSeq()] = new DisplayObject(displayObject.getObjectInfo(), sliceObjects.size());
+            sliceObjects.add(column[displayObject.getSeq()]);
+            sliceMethods.add(methods);
+        }
+
+        DisplayLink[] sliceLinks = new DisplayLink[last - first + 1];
+        for (int seq = first; seq <= last; ++seq) {
+            DisplayLink link = links[seq];
+            DisplayLink sliceLink = createLink(link.getLink(), column[link.getFrom().getSeq()],
+                    column[link.getTo().getSeq()], seq - first);
+            sliceLink.copyFoldState(link);
+            sliceLinks[seq - first] = sliceLink;
+        }
+
+        for (int i = 0; i < sliceObjects.size(); ++i) {
+            DisplayObject sliceObject = sliceObjects.get(i);
+            for (DisplayMethod method : sliceMethods.get(i)) {
+                DisplayMethod sliceMethod = new DisplayMethod(method.getObjectInfo(), method.getMethodInfo(),
+                        sliceLinks[Math.max(method.getStartSeq(), first) - first],
+                        sliceLinks[Math.min(method.getEndSeq(), last) - first]);
+                sliceMethod.setFolded(method.isFolded());
+                sliceObject.addMethod(sliceMethod, method.getHorizontalSeq());
             }
+            sliceObject.seal();
         }
+
+        slice._snapshot = new Snapshot(sliceObjects.toArray(new DisplayObject[0]), sliceLinks,
+                sliceLinks.length > VIRTUAL_LAYOUT_THRESHOLD);
+        return slice;
+    }
+
+    /**
+     * @return the slice of the activation: its call, the calls it makes and its return
+     */
+    public Diagram slice(DisplayMethod method) {
+        return slice(method.getStartSeq(), method.getEndSeq());
     }
 
-    public Dimension layoutObjects(Graphics2D g2, int inset) {
+    /**
+     * @param top    top of the area, in the diagram below the header
+     * @param bottom bottom of the area
+     * @return the slice of the rows in the area, or null if the diagram is not laid out
+     */
+    public Diagram sliceRows(int top, int bottom) {
+        Snapshot snapshot = _snapshot;
+        if (!snapshot.isLaidOut() || snapshot.rows.size() == 0)
+            return null;
+        return slice(snapshot.rows.rowAt(top), snapshot.rows.rowAt(bottom));
+    }
+
+    /**
+     * Slice a numbered range of calls: <code>3.2.*</code> or <code>3.2</code> for call 3.2 and the
+     * calls it makes, <code>3.2-3.5</code> for calls 3.2 to 3.5 and the calls they make. The
+     * numbers are the ones shown in the tooltips of the calls.
+     *
+     * @return null if the range is not valid or no call has its numbers
+     */
+    public Diagram sliceCalls(String range) {
+        String[] bounds = range.trim().split("-", -1);
+        if (bounds.length > 2)
+            return null;
+        DisplayMethod from = findCall(bounds[0]);
+        DisplayMethod to = bounds.length == 1 ? from : findCall(bounds[1]);
+        if (from == null || to == null || to.getEndSeq() < from.getStartSeq())
+            return null;
+        return slice(from.getStartSeq(), to.getEndSeq());
+    }
+
+    /**
+     * @param name numbering of a call, optionally followed by <code>.*</code>
+     * @return the activation opened by the call, or null
+     */
+    private DisplayMethod findCall(String name) {
+        name = name.trim();
+        if (name.endsWith(".*"))
+            name = name.substring(0, name.length() - 2);
+        Numbering numbering = Numbering.parse(name);
+        if (numbering == null)
+            return null;
+        // the calls are numbered in the order they are made and each one returns after the calls
+        // it makes, so the links are sorted and the call is found by binary search
+        DisplayLink[] links = _snapshot.links;
+        int low = 0, high = links.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (isBefore(links[mid], numbering))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        if (low == links.length)
+            return null;
+        DisplayLink link = links[low];
+        if (link.isReturnLink() || !numbering.equals(link.getLink().getMethodInfo().getNumbering()))
+            return null;
+        return link.getTo().findMethodStartingAt(link.getSeq());
+    }
+
+    /**
+     * @return whether the link comes before the call with the numbering
+     */
+    private static boolean isBefore(DisplayLink link, Numbering numbering) {
+        Numbering linkNumbering = link.getLink().getMethodInfo().getNumbering();
+        if (link.isReturnLink() && numbering.startsWith(linkNumbering))
+            return false;
+        return linkNumbering.compareTo(numbering) < 0;
+    }
+
+    Dimension layoutObjects(Graphics2D g2, int inset, RenderStyle style) {
+        Snapshot published = _snapshot;
+        Snapshot snapshot = copy(published, false);
+        DisplayObject[] objectLifeLines = snapshot.objects;
+        DisplayLink[] links = snapshot.links;
         int x = inset;
         int y = inset;
-        for (DisplayObject displayObject : _objectLifeLines) {
+        for (DisplayObject displayObject : objectLifeLines) {
+            displayObject.setStyle(style);
             displayObject.setX(x);
             displayObject.setY(y);
             displayObject.initializeGraphics(g2);
             x += displayObject.getWidth() + inset;
         }
 
+        int charWidth = 0;
+        if (snapshot.virtual) {
+            FontMetrics fm = g2.getFontMetrics();
+            charWidth = (fm.stringWidth(WIDTH_SAMPLE) + WIDTH_SAMPLE.length() - 1) / WIDTH_SAMPLE.length();
+        }
+
         int maxWidth = 200;
-        synchronized (_objectLifeLines) {
-            for (int i = 0; i < _objectLifeLines.size(); ++i) {
-                DisplayObject obj = _objectLifeLines.get(i);
-                if (LOGGER.isDebugEnabled())
-                    LOGGER.debug("Laying out " + obj);
-                for (DisplayLink call : obj.getCalls()) {
-                    int availableGap;
-                    if (call.isSelfCall()) {
-                        if (i == _objectLifeLines.size() - 1) {
-                            int width = obj.getWidth();
-                            if (width < call.getTextWidth())
-                                obj.setWidth(width / 2 + call.getTextWidth());
-                            continue;
-                        } else {
-                            availableGap = obj.calcCurrentGap(
-                                    _objectLifeLines.get(i + 1), call.getSeq());
-                        }
+        for (int i = 0; i < objectLifeLines.length; ++i) {
+            DisplayObject obj = objectLifeLines[i];
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Laying out " + obj);
+            for (DisplayLink call : obj.getCalls()) {
+                int textWidth = snapshot.virtual ? call.estimateTextWidth(charWidth) : call.getTextWidth();
+                int availableGap;
+                if (call.isSelfCall()) {
+                    if (i == objectLifeLines.length - 1) {
+                        int width = obj.getWidth();
+                        if (width < textWidth)
+                            obj.setWidth(width / 2 + textWidth);
+                        continue;
                     } else {
-                        availableGap = obj.calcCurrentGap(call.getTo(), call.getSeq());
+                        availableGap = obj.calcCurrentGap(objectLifeLines[i + 1], call.getSeq());
                     }
+                } else {
+                    availableGap = obj.calcCurrentGap(call.getTo(), call.getSeq());
+                }
 
-                    if (availableGap < call.getTextWidth()) {
-                        int offset = call.getTextWidth() - availableGap;
-                        if (LOGGER.isDebugEnabled())
-                            LOGGER.debug("gap too small by " + offset);
-                        int startJ = i + 1;
-                        if (call.getTo().getSeq() < startJ)
-                            startJ = call.getTo().getSeq() + 1;
-                        for (int j = startJ; j < _objectLifeLines.size(); ++j) {
-                            (_objectLifeLines.get(j)).translate(offset);
-                        }
+                if (availableGap < textWidth) {
+                    int offset = textWidth - availableGap;
+                    if (LOGGER.isDebugEnabled())
+                        LOGGER.debug("gap too small by " + offset);
+                    int startJ = i + 1;
+                    if (call.getTo().getSeq() < startJ)
+                        startJ = call.getTo().getSeq() + 1;
+                    for (int j = startJ; j < objectLifeLines.length; ++j) {
+                        objectLifeLines[j].translate(offset);
                     }
                 }
-                maxWidth = obj.getX() + obj.getWidth() + inset;
             }
+            maxWidth = obj.getX() + obj.getWidth() + inset;
+        }
 
-            if (_objectLifeLines.isEmpty())
-                y = 100;
-            else
-                y += (_objectLifeLines.get(0)).getHeight();
+        if (objectLifeLines.length == 0)
+            y = 100;
+        else
+            y += objectLifeLines[0].getHeight();
+
+        int[] heights = new int[links.length];
+        for (int i = 0; i < heights.length; ++i) {
+            heights[i] = links[i].getRowHeight();
+        }
+        RowIndex rows = new RowIndex(y, heights);
+        for (DisplayObject displayObject : objectLifeLines) {
+            displayObject.setRows(rows);
         }
-        synchronized (_links) {
-            for (DisplayLink link : _links) {
-                link.setY(y);
-                link.initTwo();
-                y += link.getTextHeight() + link.getLinkHeight();
+        if (!snapshot.virtual) {
+            for (DisplayLink link : links) {
+                link.position();
             }
         }
-        int maxHeight = y + inset;
+        y = rows.getBottom();
 
-        calculateFullSize(y);
-        return new Dimension(maxWidth, maxHeight);
+        calculateFullSize(objectLifeLines, y);
+        // a diagram built meanwhile is laid out once its display sees it
+        SNAPSHOT.compareAndSet(this, published, snapshot.laidOut(rows, inset, maxWidth, style));
+        return new Dimension(maxWidth, y + inset);
     }
 
-    private void calculateFullSize(int height) {
-        synchronized (_objectLifeLines) {
-            for (int i = 0; i < _objectLifeLines.size(); i++) {
-                DisplayObject displayObject = _objectLifeLines.get(i);
-                displayObject.setFullHeight(height);
-                if (i + 1 == _objectLifeLines.size()) {
-                    displayObject.setFullWidth(displayObject.getWidth());
-                } else {
-                    DisplayObject nextDisplayObject = _objectLifeLines.get(i + 1);
-                    displayObject.setFullWidth(nextDisplayObject.getCenterX() - displayObject.getX());
-                }
+    /**
+     * Fold or unfold the calls made inside an activation. Calls of a folded activation are
+     * skipped by layout, painting and hit-testing. Only the heights of the folded rows change,
+     * the rows below follow through the row index. The shapes are copied with their layout and
+     * the copies folded, so the published snapshot is left as it is.
+     *
+     * @param method  activation to fold or unfold, of this or an earlier snapshot
+     * @param folded  new fold state
+     * @return the new preferred size, or null if the diagram is not laid out yet or was built
+     * again meanwhile
+     */
+    public Dimension setFolded(DisplayMethod method, boolean folded) {
+        Snapshot published = _snapshot;
+        DisplayMethod current = find(published, method);
+        if (current == null || current.isFolded() == folded)
+            return null;
+        Snapshot snapshot = copy(published, true);
+        find(snapshot, method).setFolded(folded);
+        RowIndex rows = published.isLaidOut() ? new RowIndex(published.rows) : null;
+        for (int seq = method.getStartSeq() + 1; seq < method.getEndSeq(); ++seq) {
+            DisplayLink link = snapshot.links[seq];
+            if (folded)
+                link.fold();
+            else
+                link.unfold();
+            if (rows != null)
+                rows.setHeight(seq, link.getRowHeight());
+        }
+        if (rows == null) {
+            SNAPSHOT.compareAndSet(this, published, snapshot);
+            return null;
+        }
+        for (DisplayObject displayObject : snapshot.objects) {
+            displayObject.setRows(rows);
+        }
+        int y = rows.getBottom();
+        calculateFullSize(snapshot.objects, y);
+        if (!SNAPSHOT.compareAndSet(this, published,
+                snapshot.laidOut(rows, published.inset, published.width, published.style)))
+            return null;
+        return new Dimension(published.width, y + published.inset);
+    }
+
+    /**
+     * @param screenObject a shape of this or an earlier snapshot, e.g. the selection
+     * @return the shape standing for it in the current snapshot, or null if the diagram was built again since
+     */
+    public ScreenObject find(ScreenObject screenObject) {
+        Snapshot snapshot = _snapshot;
+        if (screenObject instanceof DisplayObject) {
+            DisplayObject displayObject = (DisplayObject) screenObject;
+            int seq = displayObject.getSeq();
+            return seq < snapshot.objects.length && snapshot.objects[seq].getObjectInfo() == displayObject.getObjectInfo()
+                    ? snapshot.objects[seq] : null;
+        }
+        if (screenObject instanceof DisplayLink) {
+            DisplayLink displayLink = (DisplayLink) screenObject;
+            int seq = displayLink.getSeq();
+            return seq < snapshot.links.length && snapshot.links[seq].getLink() == displayLink.getLink()
+                    ? snapshot.links[seq] : null;
+        }
+        if (screenObject instanceof DisplayMethod)
+            return find(snapshot, (DisplayMethod) screenObject);
+        return null;
+    }
+
+    private static DisplayMethod find(Snapshot snapshot, DisplayMethod method) {
+        int seq = method.getStartSeq();
+        if (seq >= snapshot.links.length)
+            return null;
+        DisplayMethod found = snapshot.links[seq].getTo().findMethodStartingAt(seq);
+        return found != null && found.getMethodInfo() == method.getMethodInfo() ? found : null;
+    }
+
+    /**
+     * Copy the shapes of the snapshot, for a layout or a fold to change the copies while the
+     * published shapes are read by the tiles, the overview and exports.
+     *
+     * @param keepLayout keep the positions and measures, for a fold; a layout measures everything again
+     * @return the copy, not laid out
+     */
+    private static Snapshot copy(Snapshot snapshot, boolean keepLayout) {
+        DisplayObject[] objects = new DisplayObject[snapshot.objects.length];
+        for (int i = 0; i < objects.length; ++i) {
+            objects[i] = snapshot.objects[i].copy(keepLayout);
+        }
+        DisplayLink[] links = new DisplayLink[snapshot.links.length];
+        for (int seq = 0; seq < links.length; ++seq) {
+            DisplayLink link = snapshot.links[seq];
+            links[seq] = createLink(link.getLink(), objects[link.getFrom().getSeq()], objects[link.getTo().getSeq()], seq);
+            links[seq].copyState(link, keepLayout);
+        }
+        for (DisplayObject displayObject : snapshot.objects) {
+            DisplayObject copy = objects[displayObject.getSeq()];
+            for (DisplayMethod method : displayObject.getMethods()) {
+                DisplayMethod methodCopy = new DisplayMethod(method.getObjectInfo(), method.getMethodInfo(),
+                        links[method.getStartSeq()], links[method.getEndSeq()]);
+                methodCopy.copyState(method);
+                copy.addMethod(methodCopy, method.getHorizontalSeq());
+            }
+            copy.seal();
+        }
+        return new Snapshot(objects, links, snapshot.virtual);
+    }
+
+    private static void calculateFullSize(DisplayObject[] objectLifeLines, int height) {
+        for (int i = 0; i < objectLifeLines.length; i++) {
+            DisplayObject displayObject = objectLifeLines[i];
+            displayObject.setFullHeight(height);
+            if (i + 1 == objectLifeLines.length) {
+                displayObject.setFullWidth(displayObject.getWidth());
+            } else {
+                DisplayObject nextDisplayObject = objectLifeLines[i + 1];
+                displayObject.setFullWidth(nextDisplayObject.getCenterX() - displayObject.getX());
             }
         }
     }
 
     public Dimension getPreferredHeaderSize() {
         int maxHeight = 0, width = 0;
-        synchronized (_objectLifeLines) {
-            for (DisplayObject displayObjectInfo : _objectLifeLines) {
-                int preferredHeight = displayObjectInfo.getPreferredHeaderHeight();
-                if (maxHeight < preferredHeight)
-                    maxHeight = preferredHeight;
-                width = displayObjectInfo.getPreferredHeaderWidth();
-            }
+        for (DisplayObject displayObjectInfo : _snapshot.objects) {
+            int preferredHeight = displayObjectInfo.getPreferredHeaderHeight();
+            if (maxHeight < preferredHeight)
+                maxHeight = preferredHeight;
+            width = displayObjectInfo.getPreferredHeaderWidth();
         }
         return new Dimension(width, maxHeight);
     }
 
+    /**
+     * Find the shape at x, y. Lifelines are ordered by x, and activations and links are looked up
+     * by the row at y, so this does not depend on the size of the diagram.
+     */
     public ScreenObject findScreenObjectByXY(int x, int y) {
+        Snapshot snapshot = _snapshot;
+        DisplayObject[] objectLifeLines = snapshot.objects;
+        int low = 0, high = objectLifeLines.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (objectLifeLines[mid].getX() <= x)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        if (low > 0 && objectLifeLines[low - 1].isInRange(x, y))
+            return objectLifeLines[low - 1];
+        if (!snapshot.isLaidOut() || snapshot.rows.size() == 0)
+            return null;
+
+        // shapes include their bottom edge, which is also the top of the next row
+        RowIndex rows = snapshot.rows;
+        int row = rows.rowAt(y - 1);
         DisplayMethod selectedMethodBox = null;
-        synchronized (_objectLifeLines) {
-            for (DisplayObject displayObject : _objectLifeLines) {
-                if (displayObject.isInRange(x, y))
-                    return displayObject;
-                DisplayMethod methodBox = displayObject.findMethod(x, y);
-                if (methodBox != null) {
-                    if (selectedMethodBox == null || selectedMethodBox.getX() < methodBox.getX()) {
-                        selectedMethodBox = methodBox;
-                    }
+        DisplayObject[] columns = snapshot.methodColumns;
+        int[] left = snapshot.methodColumnLeft;
+        int[] reach = snapshot.methodColumnReach;
+        low = 0;
+        high = columns.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (left[mid] <= x)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        for (int i = low - 1; i >= 0 && reach[i] >= x; --i) {
+            DisplayMethod methodBox = columns[i].findMethod(x, y, row);
+            if (methodBox != null) {
+                if (selectedMethodBox == null || selectedMethodBox.getX() < methodBox.getX()) {
+                    selectedMethodBox = methodBox;
                 }
             }
         }
         if (selectedMethodBox == null) {
-            synchronized (_links) {
-                for (DisplayLink displayLink : _links) {
-                    if (displayLink.isReturnLink())
-                        continue;
-                    if (displayLink.isInRange(x, y))
-                        return displayLink;
-                }
-            }
+            DisplayLink displayLink = findLink(snapshot.links[row], x, y);
+            if (displayLink == null && rows.rowAt(y) != row)
+                displayLink = findLink(snapshot.links[rows.rowAt(y)], x, y);
+            if (displayLink != null)
+                return displayLink;
         }
         return selectedMethodBox;
     }
 
+    private static DisplayLink findLink(DisplayLink displayLink, int x, int y) {
+        if (displayLink.isReturnLink() || displayLink.isHidden() || !displayLink.isInRange(x, y))
+            return null;
+        return displayLink;
+    }
+
     public void paint(Graphics2D g2) {
-        synchronized (_objectLifeLines) {
-            for (DisplayObject displayObject : _objectLifeLines) {
-                displayObject.paint(g2);
-            }
+        paint(g2, false);
+    }
+
+    /**
+     * Paint the shapes inside the clip. The clip is turned into a range of rows through the row
+     * index, and only the links and activations of those rows are visited.
+     *
+     * @param lowDetail draw lines and boxes without text, for small scales
+     */
+    public void paint(Graphics2D g2, boolean lowDetail) {
+        Snapshot snapshot = _snapshot;
+        if (!snapshot.isLaidOut())
+            return;
+        RowIndex rows = snapshot.rows;
+        int first = 0, last = rows.size() - 1;
+        Rectangle clipBounds = g2.getClipBounds();
+        if (clipBounds != null && rows.size() > 0) {
+            // the arrow heads and the selection stroke stick out a little above the row
+            first = rows.rowAt(clipBounds.y - 4);
+            last = rows.rowAt(clipBounds.y + clipBounds.height);
+        }
+
+        for (DisplayObject displayObject : snapshot.objects) {
+            displayObject.paint(g2, first, last, lowDetail);
+        }
+        boolean showReturnArrows = snapshot.style.showReturnArrows;
+        for (int i = first; i <= last; ++i) {
+            DisplayLink displayLink = snapshot.links[i];
+            if (displayLink.isHidden() || !displayLink.isPainted(showReturnArrows))
+                continue;
+            if (lowDetail)
+                displayLink.paintLowDetail(g2);
+            else
+                displayLink.paint(g2);
         }
     }
 
     public void paintHeader(Graphics2D g2) {
-        synchronized (_objectLifeLines) {
-            for (DisplayObject displayObject : _objectLifeLines) {
+        paintHeader(g2, false);
+    }
+
+    public void paintHeader(Graphics2D g2, boolean lowDetail) {
+        Snapshot snapshot = _snapshot;
+        if (!snapshot.isLaidOut())
+            return;
+        for (DisplayObject displayObject : snapshot.objects) {
+            if (lowDetail)
+                displayObject.paintHeaderLowDetail(g2);
+            else
                 displayObject.paintHeader(g2);
-            }
         }
     }
 
+    /**
+     * Lay out the diagram with the style of the settings and write it as svg, without a
+     * {@link Display}, e.g. from a background thread.
+     */
+    public void writeSvg(Writer out) throws IOException {
+        RenderStyle style = RenderStyle.fromSettings();
+        Dimension diagramSize;
+        Graphics2D g2 = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            style.apply(g2);
+            diagramSize = layoutObjects(g2, DEFAULT_INSET, style);
+        } finally {
+            g2.dispose();
+        }
+        Dimension headerSize = getPreferredHeaderSize();
+        Dimension size = new Dimension(Math.max(headerSize.width, diagramSize.width),
+                headerSize.height + diagramSize.height);
+        writeSvg(new SvgWriter(out), size, fraction -> {});
+    }
+
+    /**
+     * Write the header and the diagram as svg, in the order they are painted.
+     *
+     * @param progress told the fraction of the links written
+     */
+    void writeSvg(SvgWriter svg, Dimension size, DoubleConsumer progress) throws IOException {
+        Snapshot snapshot = _snapshot;
+        if (!snapshot.isLaidOut())
+            return;
+        svg.start(size.width, size.height, snapshot.style);
+        int headerHeight = 0;
+        for (DisplayObject displayObject : snapshot.objects) {
+            displayObject.writeSvgHeader(svg);
+            headerHeight = Math.max(headerHeight, displayObject.getPreferredHeaderHeight());
+        }
+        svg.startGroup(headerHeight);
+        for (DisplayObject displayObject : snapshot.objects) {
+            displayObject.writeSvg(svg);
+        }
+        boolean showReturnArrows = snapshot.style.showReturnArrows;
+        DisplayLink[] links = snapshot.links;
+        for (int i = 0; i < links.length; ++i) {
+            if ((i & 0xFFF) == 0)
+                progress.accept((double) i / links.length);
+            DisplayLink displayLink = links[i];
+            if (!displayLink.isHidden() && displayLink.isPainted(showReturnArrows))
+                displayLink.writeSvg(svg);
+        }
+        svg.endGroup();
+        svg.end();
+    }
+
     /**
      * `Actor` + One `DisplayObject` lifeline .
      * @return
      */
     public boolean isSingleObject() {
-        return _objectLifeLines.size() <= 2;
+        return _snapshot.objects.length <= 2;
     }
 
     public boolean isEmpty() {
-        return _objectLifeLines.isEmpty();
+        return _snapshot.objects.length == 0;
     }
 
     public boolean nonEmpty() {
         return !isEmpty();
     }
+
+    /**
+     * The lifelines and links of one build, with the indexes of one layout. A layout or a fold
+     * copies the shapes, changes the copies and publishes them in a new snapshot with one
+     * volatile write, so the shapes of a published snapshot are never changed but for their
+     * selection. Labels measured and links positioned lazily while painting are the same
+     * whichever thread does it.
+     */
+    private static final class Snapshot {
+        final DisplayObject[] objects;
+        final DisplayLink[] links;
+        final boolean virtual;
+
+        final RowIndex rows;
+        final int inset;
+        /** -1 until laid out */
+        final int width;
+        /** lifelines with activations, ordered by the left edge of their activations */
+        final DisplayObject[] methodColumns;
+        final int[] methodColumnLeft;
+        /** right edge of the activations, running maximum over <code>methodColumns</code> */
+        final int[] methodColumnReach;
+        final RenderStyle style;
+
+        Snapshot(DisplayObject[] objects, DisplayLink[] links, boolean virtual) {
+            this(objects, links, virtual, null, 0, -1,
+                    new DisplayObject[0], new int[0], new int[0], null);
+        }
+
+        private Snapshot(DisplayObject[] objects, DisplayLink[] links, boolean virtual,
+                         RowIndex rows, int inset, int width,
+                         DisplayObject[] methodColumns, int[] methodColumnLeft, int[] methodColumnReach,
+                         RenderStyle style) {
+            this.objects = objects;
+            this.links = links;
+            this.virtual = virtual;
+            this.rows = rows;
+            this.inset = inset;
+            this.width = width;
+            this.methodColumns = methodColumns;
+            this.methodColumnLeft = methodColumnLeft;
+            this.methodColumnReach = methodColumnReach;
+            this.style = style;
+        }
+
+        boolean isLaidOut() {
+            return width != -1;
+        }
+
+        Snapshot laidOut(RowIndex rows, int inset, int width, RenderStyle style) {
+            List<DisplayObject> columns = new ArrayList<>();
+            for (DisplayObject displayObject : objects) {
+                if (displayObject.hasMethods())
+                    columns.add(displayObject);
+            }
+            columns.sort(Comparator.comparingInt(DisplayObject::getMethodsLeft));
+            int[] left = new int[columns.size()];
+            int[] reach = new int[columns.size()];
+            for (int i = 0; i < left.length; ++i) {
+                DisplayObject displayObject = columns.get(i);
+                left[i] = displayObject.getMethodsLeft();
+                reach[i] = Math.max(displayObject.getMethodsRight(), i == 0 ? Integer.MIN_VALUE : reach[i - 1]);
+            }
+            return new Snapshot(objects, links, virtual, rows, inset, width,
+                    columns.toArray(new DisplayObject[0]), left, reach, style);
+        }
+    }
 }
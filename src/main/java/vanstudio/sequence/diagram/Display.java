@@ -1,45 +1,64 @@
 package vanstudio.sequence.diagram;
 
 import com.intellij.ui.JBColor;
-import com.intellij.util.ui.ImageUtil;
-import org.apache.batik.dom.GenericDOMImplementation;
-import org.apache.batik.svggen.SVGGraphics2D;
-import org.apache.batik.transcoder.Transcoder;
-import org.apache.batik.transcoder.TranscoderException;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.JPEGTranscoder;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.batik.transcoder.image.TIFFTranscoder;
 import vanstudio.sequence.config.ConfigListener;
 import vanstudio.sequence.config.SequenceSettingsState;
-import org.w3c.dom.DOMImplementation;
-import org.w3c.dom.Document;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
+import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 public class Display extends JComponent implements ModelTextListener, Scrollable, ConfigListener {
-    private int _inset = 5;
+    private static final double MIN_ZOOM = 0.05;
+    private static final double MAX_ZOOM = 4.;
+    private static final double ZOOM_STEP = 1.25;
+    /** text smaller than this, in pixels, is left out */
+    private static final float MIN_FONT_SIZE = 6f;
+    private static final DoubleConsumer NO_PROGRESS = fraction -> {};
+
+    private int _inset = Diagram.DEFAULT_INSET;
 
     private final Model _model;
     private SequenceListener _listener;
 
-    private boolean _initialized = false;
+    private volatile boolean _initialized = false;
     private final DisplayHeader _displayHeader;
     private final Diagram _diagram;
+    private final TileCache _tiles;
+    private final Overview _overview;
+    private final DisplayMouseAdapter _mouseAdapter;
+    private volatile double _zoom = 1.;
+    /** resolved from the settings when first needed, dropped when they change */
+    private volatile RenderStyle _style;
+    /** size of the laid-out diagram at 100% */
+    private Dimension _diagramSize = new Dimension(200, 200);
 
     public Display(Model model, SequenceListener listener) {
+        this(model, new Diagram(), listener);
+        setQuery(model.getText());
+    }
+
+    private Display(Model model, Diagram diagram, SequenceListener listener) {
         _model = model;
-        _diagram = new Diagram();
+        _diagram = diagram;
+        _tiles = new TileCache(this, this::paintDiagram, this::repaintDiagram, this::getVisibleDiagram);
+        _overview = new Overview(this);
         _listener = listener;
         if (_listener == null)
             _listener = new NullListener();
@@ -48,21 +67,23 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         setFocusable(true);
         setBackground(JBColor.background());
 
-        DisplayMouseAdapter displayMouseAdapter = new DisplayMouseAdapter();
-        addMouseListener(displayMouseAdapter);
+        _mouseAdapter = new DisplayMouseAdapter();
+        addMouseListener(_mouseAdapter);
+        addMouseWheelListener(this::mouseWheelMoved);
+        installZoomKeys();
         _model.addModelTextListener(this);
 
         _displayHeader = new DisplayHeader();
-        _displayHeader.addMouseListener(displayMouseAdapter);
+        _displayHeader.addMouseListener(_mouseAdapter);
         _displayHeader.setBackground(getBackground());
 
         setToolTipText(" ");
-
-        setQuery(model.getText());
     }
 
     public void dispose() {
         _model.removeModelTextListener(this);
+        _tiles.invalidateAll();
+        _overview.dispose();
     }
 
     public void modelTextChanged(ModelTextEvent event) {
@@ -76,7 +97,14 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         repaint();
     }
 
-    public synchronized void paintComponent(Graphics g) {
+    public void paintComponent(Graphics g) {
+        paintComponent(g, true);
+    }
+
+    /**
+     * @param onScreen paint zoomed from the tile cache, false to paint the shapes at 100%, e.g. for export
+     */
+    private void paintComponent(Graphics g, boolean onScreen) {
         super.paintComponent(g);
 
         Graphics2D g2 = (Graphics2D) g;
@@ -88,31 +116,108 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         if (!_initialized)
             layout(g2);
 
-        _diagram.paint(g2);
+        if (onScreen) {
+            g2.scale(_zoom, _zoom);
+            _tiles.paint(g2);
+        } else {
+            _diagram.paint(g2);
+        }
+    }
+
+    private void paintDiagram(Graphics2D g2) {
+        setupGraphics(g2);
+        _diagram.paint(g2, isLowDetail(_zoom));
+    }
+
+    private void repaintDiagram(Rectangle area) {
+        Insets insets = getInsets();
+        int x = (int) Math.floor(area.x * _zoom);
+        int y = (int) Math.floor(area.y * _zoom);
+        repaint(insets.left + x, insets.top + y,
+                (int) Math.ceil((area.x + area.width) * _zoom) - x, (int) Math.ceil((area.y + area.height) * _zoom) - y);
+    }
+
+    /**
+     * @return the part of the diagram in view, in its coordinates at 100%
+     */
+    private Rectangle getVisibleDiagram() {
+        Rectangle visible = getVisibleRect();
+        Insets insets = getInsets();
+        int x = (int) Math.floor((visible.x - insets.left) / _zoom);
+        int y = (int) Math.floor((visible.y - insets.top) / _zoom);
+        return new Rectangle(x, y, (int) Math.ceil((visible.x + visible.width - insets.left) / _zoom) - x,
+                (int) Math.ceil((visible.y + visible.height - insets.top) / _zoom) - y);
+    }
+
+    /**
+     * @return true if at this scale the text is too small to read and shapes are drawn without detail
+     */
+    boolean isLowDetail(double scale) {
+        return getStyle().font.getSize2D() * scale < MIN_FONT_SIZE;
+    }
+
+    /**
+     * Paint the header and the diagram below it, for the overview.
+     */
+    void paintOverview(Graphics2D g2, boolean lowDetail) {
+        setupGraphics(g2);
+        _diagram.paintHeader(g2, lowDetail);
+        g2.translate(0, _diagram.getPreferredHeaderSize().height);
+        _diagram.paint(g2, lowDetail);
     }
 
     private void setupGraphics(Graphics2D g2) {
-        SequenceSettingsState sequenceSettingsState = SequenceSettingsState.getInstance();
-        g2.setFont(new Font(sequenceSettingsState.FONT_NAME, Font.PLAIN, sequenceSettingsState.FONT_SIZE));
-        if (sequenceSettingsState.USE_ANTIALIASING) {
-            HashMap<Object, Object> hintsMap = new HashMap<>();
-            hintsMap.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.addRenderingHints(hintsMap);
-        }
+        getStyle().apply(g2);
+    }
+
+    private RenderStyle getStyle() {
+        RenderStyle style = _style;
+        if (style == null)
+            _style = style = RenderStyle.fromSettings();
+        return style;
     }
 
     public String getToolTipText(MouseEvent event) {
-        ScreenObject screenObject = _diagram.findScreenObjectByXY(event.getX(), event.getY());
+        ScreenObject screenObject = findScreenObject(event);
         if (screenObject == null)
             return null;
         return screenObject.getToolTip();
     }
 
     private void layout(Graphics2D g2) {
-        _initialized = true;
-        Dimension dimension = _diagram.layoutObjects(g2, _inset);
-        setPreferredSize(dimension);
+        _tiles.invalidateAll();
+        layoutDiagram(g2);
+        setPreferredSize(zoomed(_diagramSize));
         revalidate();
+        _overview.invalidate();
+    }
+
+    /**
+     * Lay out the diagram only, leaving the component alone.
+     */
+    private void layoutDiagram(Graphics2D g2) {
+        _initialized = true;
+        _diagramSize = _diagram.layoutObjects(g2, _inset, getStyle());
+        _mouseAdapter.followSelection();
+    }
+
+    /**
+     * Lay out a diagram which has not been painted yet, e.g. a copy exported in the background.
+     * A display which is not in a window only lays out its diagram, which is safe off the EDT.
+     */
+    private void ensureLayout() {
+        if (_initialized)
+            return;
+        Graphics2D g2 = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            setupGraphics(g2);
+            if (isDisplayable())
+                layout(g2);
+            else
+                layoutDiagram(g2);
+        } finally {
+            g2.dispose();
+        }
     }
 
     public void revalidate() {
@@ -125,6 +230,200 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         return _diagram;
     }
 
+    /**
+     * @return the shape last clicked, or null
+     */
+    public ScreenObject getSelectedScreenObject() {
+        return _mouseAdapter.selectedScreenObject;
+    }
+
+    /**
+     * @return a display of a copy of the whole diagram, for export. Call on the EDT; the copy can
+     *         then be exported in the background while this display changes. Dispose it when done.
+     */
+    public Display sliceAll() {
+        return exportDisplay(_diagram.slice(0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return a display of the rows in view, for export, or null if nothing is shown yet. Dispose
+     *         it when done.
+     */
+    public Display sliceVisible() {
+        Rectangle visible = getVisibleRect();
+        Insets insets = getInsets();
+        Diagram slice = _diagram.sliceRows((int) Math.floor(visible.y / _zoom) - insets.top,
+                (int) Math.ceil((visible.y + visible.height) / _zoom) - insets.top);
+        return slice == null ? null : exportDisplay(slice);
+    }
+
+    /**
+     * @return a display of the selected activation or call and the calls it makes, for export,
+     *         or null if neither is selected. Dispose it when done.
+     */
+    public Display sliceSelection() {
+        DisplayMethod method = getSelectedMethod();
+        return method == null ? null : exportDisplay(_diagram.slice(method));
+    }
+
+    /**
+     * @return true if an activation or a call is selected, see {@link #sliceSelection()}
+     */
+    public boolean hasSelectedCall() {
+        return getSelectedMethod() != null;
+    }
+
+    /**
+     * @return the selected activation, or the one opened by the selected call
+     */
+    private DisplayMethod getSelectedMethod() {
+        ScreenObject selected = getSelectedScreenObject();
+        if (selected instanceof DisplayMethod)
+            return (DisplayMethod) selected;
+        if (selected instanceof DisplayLink && !((DisplayLink) selected).isReturnLink())
+            return ((DisplayLink) selected).getTo().findMethodStartingAt(((DisplayLink) selected).getSeq());
+        return null;
+    }
+
+    /**
+     * @param range numbered calls, see {@link Diagram#sliceCalls(String)}
+     * @return a display of the calls, for export, or null if there are no such calls. Dispose it
+     *         when done.
+     */
+    public Display sliceCalls(String range) {
+        Diagram slice = _diagram.sliceCalls(range);
+        return slice == null ? null : exportDisplay(slice);
+    }
+
+    /**
+     * @return a display of the slice, painted in the style of this display whatever the settings
+     *         become while it is exported
+     */
+    private Display exportDisplay(Diagram slice) {
+        Display display = new Display(new Model(), slice, null);
+        display._style = getStyle();
+        return display;
+    }
+
+    /**
+     * Fold or unfold the calls made inside the activation.
+     * @param method activation
+     * @param folded true to hide the calls
+     */
+    public void setFolded(DisplayMethod method, boolean folded) {
+        Dimension dimension = _diagram.setFolded(method, folded);
+        _mouseAdapter.followSelection();
+        // only the rows below the activation move
+        _tiles.invalidate(new Rectangle(0, method.getY(), Integer.MAX_VALUE, Integer.MAX_VALUE));
+        if (dimension != null && _initialized) {
+            _diagramSize = dimension;
+            setPreferredSize(zoomed(dimension));
+            revalidate();
+            _overview.invalidateFrom(_diagram.getPreferredHeaderSize().height + method.getY());
+        }
+        repaintAll();
+    }
+
+    public double getZoom() {
+        return _zoom;
+    }
+
+    public void zoomIn() {
+        setZoom(_zoom * ZOOM_STEP, getVisibleCenter());
+    }
+
+    public void zoomOut() {
+        setZoom(_zoom / ZOOM_STEP, getVisibleCenter());
+    }
+
+    public void resetZoom() {
+        setZoom(1., getVisibleCenter());
+    }
+
+    /**
+     * Change the zoom, keeping the part of the diagram under the anchor in place.
+     * @param zoom new zoom, clamped to the supported range
+     * @param anchor point in component coordinates
+     */
+    private void setZoom(double zoom, Point anchor) {
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        if (zoom == _zoom)
+            return;
+        double ratio = zoom / _zoom;
+        _zoom = zoom;
+        setPreferredSize(zoomed(_diagramSize));
+        revalidate();
+
+        Component parent = getParent();
+        if (parent instanceof JViewport && parent.getParent() != null) {
+            JViewport viewport = (JViewport) parent;
+            Point position = viewport.getViewPosition();
+            // lay out the scroll pane now so that the new position is not clamped to the old size
+            viewport.getParent().validate();
+            Dimension extent = viewport.getExtentSize();
+            Dimension size = getSize();
+            int x = (int) Math.round(anchor.x * ratio) - (anchor.x - position.x);
+            int y = (int) Math.round(anchor.y * ratio) - (anchor.y - position.y);
+            x = Math.max(0, Math.min(x, size.width - extent.width));
+            y = Math.max(0, Math.min(y, size.height - extent.height));
+            viewport.setViewPosition(new Point(x, y));
+        }
+        repaintAll();
+    }
+
+    private Point getVisibleCenter() {
+        Rectangle visible = getVisibleRect();
+        return new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+    }
+
+    private Dimension zoomed(Dimension size) {
+        return new Dimension((int) Math.ceil(size.width * _zoom), (int) Math.ceil(size.height * _zoom));
+    }
+
+    private ScreenObject findScreenObject(MouseEvent e) {
+        return _diagram.findScreenObjectByXY((int) Math.floor(e.getX() / _zoom), (int) Math.floor(e.getY() / _zoom));
+    }
+
+    private void mouseWheelMoved(MouseWheelEvent e) {
+        if (!e.isControlDown() && !e.isMetaDown()) {
+            // a wheel listener keeps the events from the scroll pane, so pass them on
+            Container parent = getParent();
+            if (parent != null)
+                parent.dispatchEvent(SwingUtilities.convertMouseEvent(this, e, parent));
+            return;
+        }
+        setZoom(_zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+        e.consume();
+    }
+
+    private void installZoomKeys() {
+        InputMap inputMap = getInputMap(WHEN_FOCUSED);
+        ActionMap actionMap = getActionMap();
+        int ctrl = InputEvent.CTRL_DOWN_MASK;
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, ctrl), "zoomIn");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_PLUS, ctrl), "zoomIn");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ADD, ctrl), "zoomIn");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, ctrl), "zoomOut");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_SUBTRACT, ctrl), "zoomOut");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_0, ctrl), "resetZoom");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_NUMPAD0, ctrl), "resetZoom");
+        actionMap.put("zoomIn", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                zoomIn();
+            }
+        });
+        actionMap.put("zoomOut", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                zoomOut();
+            }
+        });
+        actionMap.put("resetZoom", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                resetZoom();
+            }
+        });
+    }
+
     public Dimension getPreferredScrollableViewportSize() {
         return getPreferredSize();
     }
@@ -174,7 +473,9 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
     }
 
     public void configChanged() {
+        _style = null;
         _initialized = false;
+        _tiles.invalidateAll();
         repaintAll();
     }
 
@@ -183,137 +484,235 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         Display.this.repaint();
     }
 
+    public Overview getOverview() {
+        return _overview;
+    }
+
     public Component getHeader() {
         return _displayHeader;
     }
 
+    /**
+     * @return size of the header and the diagram on the screen, at the current zoom
+     */
     public Dimension getFullSize() {
-        Dimension size = getPreferredSize();
-        Dimension headerSize = _displayHeader.getPreferredSize();
+        return zoomed(getDiagramSize());
+    }
+
+    /**
+     * @return size of the header and the diagram at 100%, as exported
+     */
+    Dimension getDiagramSize() {
+        Dimension headerSize = _diagram.getPreferredHeaderSize();
 
-        int width = Math.max(headerSize.width, size.width);
-        int height = headerSize.height + size.height;
+        int width = Math.max(headerSize.width, _diagramSize.width);
+        int height = headerSize.height + _diagramSize.height;
         return new Dimension(width, height);
     }
 
     /**
      * Save image as png file.
-     * Known issue: when image width * height greater than Int.MAX_VALUE, will throw <code> java.lang.NegativeArraySizeException</code>.
-     * which is the limits of <code>Raster</code>
      * @param file file to be saved
      * @throws IOException
+     * @deprecated use {@link #saveImageToRasterFile(File, String)}
      */
     @Deprecated
     public void saveImageToFile(File file) throws IOException {
-        Dimension size = getFullSize();
-        BufferedImage image = ImageUtil.createImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
-        LookAndFeel lookAndFeel = UIManager.getLookAndFeel();
-        try {
-            String systemLookAndFeelClassName = UIManager.getSystemLookAndFeelClassName();
-            UIManager.setLookAndFeel(systemLookAndFeelClassName);
-        } catch (Exception e) {
-            //ignore
-        }
-        Graphics2D graphics = image.createGraphics();
-        paintComponentWithHeader(graphics);
-
-        try {
-            UIManager.setLookAndFeel(lookAndFeel);
-        } catch (UnsupportedLookAndFeelException e) {
-            //ignore
-        }
-        ImageIO.write(image, "png", file);
+        saveImageToRasterFile(file, "png");
     }
 
+    /**
+     * Save the diagram as svg, or as a raster image for the other extensions.
+     * @param file file to be saved
+     * @param extension svg, png, jpg or tif
+     * @throws IOException
+     */
     public void saveImageToSvgFile(File file, String extension) throws IOException {
-        DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
-        String svgNS = "http://www.w3.org/2000/svg";
-        Document document = domImpl.createDocument(svgNS, "svg", null);
-        // backup look and feel
-        LookAndFeel lookAndFeel = UIManager.getLookAndFeel();
-        // set look and feel to system default
-        try {
-            String systemLookAndFeelClassName = UIManager.getSystemLookAndFeelClassName();
-            UIManager.setLookAndFeel(systemLookAndFeelClassName);
-        } catch (Exception e) {
-            //ignore
-        }
-        SVGGraphics2D svgGraphics2D = new SVGGraphics2D(document);
+        saveImageToSvgFile(file, extension, NO_PROGRESS);
+    }
 
-        Dimension size = getFullSize();
-        svgGraphics2D.setSVGCanvasSize(size);
+    /**
+     * Save the diagram as svg, or as a raster image for the other extensions. The svg is written
+     * shape by shape from the laid-out diagram, see <code>SvgWriter</code>.
+     * @param file file to be saved
+     * @param extension svg, png, jpg or tif
+     * @param progress told the fraction done as the diagram is painted. It may throw to cancel
+     *                 the export, the file is then deleted.
+     * @throws IOException
+     */
+    public void saveImageToSvgFile(File file, String extension, DoubleConsumer progress) throws IOException {
+        if (!"svg".equals(extension)) {
+            saveImageToRasterFile(file, extension, progress);
+            return;
+        }
+        ensureLayout();
+        Dimension size = getDiagramSize();
+        deleteOnFailure(Collections.singletonList(file), () -> {
+            try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                _diagram.writeSvg(new SvgWriter(out), size, progress);
+            }
+        });
+        progress.accept(1);
+    }
 
-        paintComponentWithHeader(svgGraphics2D);
+    /**
+     * Save the diagram as a raster image. The image is painted in strips while the writer
+     * encodes it, so the whole image is never held in memory.
+     * @param file file to be saved
+     * @param format png, jpg or tif
+     * @throws IOException
+     */
+    public void saveImageToRasterFile(File file, String format) throws IOException {
+        saveImageToRasterFile(file, format, NO_PROGRESS);
+    }
 
-        // reset look and fell
+    /**
+     * Save the diagram as a raster image, see {@link #saveImageToRasterFile(File, String)}.
+     * @param progress told the fraction done before each strip is painted. It may throw to cancel
+     *                 the export, the file is then deleted.
+     */
+    public void saveImageToRasterFile(File file, String format, DoubleConsumer progress) throws IOException {
+        if ("png".equals(format)) {
+            saveImageToPngFile(file, 0, progress);
+            return;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(format);
+        if (!writers.hasNext())
+            throw new IOException("No image writer for " + format);
+        ImageWriter writer = writers.next();
+
+        // jpg has no alpha, tif gets the same white background
+        ensureLayout();
+        Dimension size = getDiagramSize();
+        StripImage image = new StripImage(size.width, size.height, BufferedImage.TYPE_INT_RGB, Color.WHITE,
+                exportPainter(size.height, progress));
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if ("jpg".equals(format)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(1.0f);
+        }
+        Files.deleteIfExists(file.toPath());
         try {
-            UIManager.setLookAndFeel(lookAndFeel);
-        } catch (UnsupportedLookAndFeelException e) {
-            //ignore
+            deleteOnFailure(Collections.singletonList(file), () -> {
+                try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+                    writer.setOutput(output);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                }
+            });
+        } finally {
+            writer.dispose();
         }
-
-        exportImage(file, extension,  svgGraphics2D);
-
+        progress.accept(1);
     }
 
-    private static void exportImage(File exportFile, String extension, SVGGraphics2D svgGraphics2D) throws IOException {
-        // write the svg file
-        File svgFile = exportFile;
+    /**
+     * Save the diagram as png with a transparent background. Bands of rows are painted and
+     * compressed one after the other, so the memory needed does not depend on the height of the
+     * diagram and diagrams taller than a <code>Raster</code> can hold are written as well.
+     * @param file file to be saved
+     * @param pageHeight height in pixels of each file, 0 for a single file. Pages are written
+     *                   next to <code>file</code> as <code>name-1.png</code>, <code>name-2.png</code>...
+     * @return the files written
+     * @throws IOException
+     */
+    public List<File> saveImageToPngFile(File file, int pageHeight) throws IOException {
+        return saveImageToPngFile(file, pageHeight, NO_PROGRESS);
+    }
 
-        if (!"svg".equals(extension)) {
-            svgFile = new File(exportFile.getAbsolutePath() + ".temp");
-        }
+    /**
+     * Save the diagram as png, see {@link #saveImageToPngFile(File, int)}.
+     * @param progress told the fraction done before each band is painted. It may throw to cancel
+     *                 the export, the files are then deleted.
+     */
+    public List<File> saveImageToPngFile(File file, int pageHeight, DoubleConsumer progress) throws IOException {
+        ensureLayout();
+        Dimension size = getDiagramSize();
+        int width = Math.max(1, size.width);
+        int height = Math.max(1, size.height);
+        int rowsPerPage = pageHeight <= 0 ? height : Math.min(pageHeight, height);
+        int pages = (height + rowsPerPage - 1) / rowsPerPage;
+        List<File> files = new ArrayList<>(pages);
+        for (int page = 0; page < pages; ++page)
+            files.add(pages == 1 ? file : pageFile(file, page + 1));
+
+        StripImage image = new StripImage(width, height, BufferedImage.TYPE_INT_ARGB, null,
+                exportPainter(height, progress));
+        deleteOnFailure(files, () -> {
+            for (int page = 0; page < pages; ++page) {
+                int top = page * rowsPerPage;
+                int bottom = Math.min(height, top + rowsPerPage);
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(files.get(page).toPath()));
+                     PngWriter writer = new PngWriter(out, width, bottom - top, true)) {
+                    for (int y = top; y < bottom; ++y) {
+                        BufferedImage strip = image.getStrip(y / StripImage.STRIP_HEIGHT);
+                        int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+                        writer.writeRow(pixels, (y % StripImage.STRIP_HEIGHT) * width);
+                    }
+                }
+            }
+        });
+        progress.accept(1);
+        return files;
+    }
 
-        try(OutputStream outputStream = Files.newOutputStream(svgFile.toPath())) {
-            Writer out = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
-            svgGraphics2D.stream(out, true /* use css */);
-            outputStream.flush();
-        }
+    private static File pageFile(File file, int page) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : ".png";
+        return new File(file.getParentFile(), base + '-' + page + extension);
+    }
 
-        if (!"svg".equals(extension)) {
+    /**
+     * @return a painter of the strips of an export, telling the progress before each strip
+     */
+    private Consumer<Graphics2D> exportPainter(int height, DoubleConsumer progress) {
+        return g2 -> {
+            Rectangle clip = g2.getClipBounds();
+            progress.accept(clip == null ? 0 : Math.min(1., (double) clip.y / height));
+            paintForExport(g2);
+        };
+    }
 
-            try (OutputStream outputStream = Files.newOutputStream(exportFile.toPath())) {
-                TranscoderOutput output = new TranscoderOutput(outputStream);
-
-                TranscoderInput svgInputFile = new TranscoderInput(svgFile.toURI().toString());
-
-                switch (extension) {
-                    case "jpg":
-                        Transcoder transcoder = new JPEGTranscoder();
-                        transcoder.addTranscodingHint(JPEGTranscoder.KEY_QUALITY, 1.0F);
-                        transcoder.transcode(svgInputFile, output);
-                        break;
-                    case "png":
-                        Transcoder pngTranscoder = new PNGTranscoder();
-                        pngTranscoder.addTranscodingHint(PNGTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, 0.084666f);
-                        pngTranscoder.transcode(svgInputFile, output);
-                        break;
-                    case "tif":
-                        TIFFTranscoder tiffTranscoder = new TIFFTranscoder();
-                        tiffTranscoder.addTranscodingHint(TIFFTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, 0.084666f);
-                        tiffTranscoder.addTranscodingHint(TIFFTranscoder.KEY_FORCE_TRANSPARENT_WHITE, true);
-                        tiffTranscoder.transcode(svgInputFile, output);
-                        break;
-                    default:
-                        break;
-                }
+    /**
+     * Paint the diagram in the colours of a light theme, so that exported images do not take the
+     * colours of a dark theme. Unlike switching the look and feel, this is safe off the EDT.
+     */
+    private void paintForExport(Graphics2D g2) {
+        g2.setRenderingHint(RenderStyle.KEY_EXPORT, Boolean.TRUE);
+        paintComponentWithHeader(g2);
+    }
 
-                outputStream.flush();
-            } catch (TranscoderException e) {
-                throw new IOException(e);
-            }
+    private interface Export {
+        void run() throws IOException;
+    }
 
-            // delete the temp svg file.
-            if (svgFile.exists()) {
-                svgFile.delete();
+    /**
+     * Delete the files, which would be incomplete, if the export fails or is cancelled.
+     */
+    private static void deleteOnFailure(List<File> files, Export export) throws IOException {
+        boolean done = false;
+        try {
+            export.run();
+            done = true;
+        } finally {
+            if (!done) {
+                for (File file : files)
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
             }
         }
     }
 
+    /**
+     * Paint the header and the diagram at 100%, for export.
+     */
     public void paintComponentWithHeader(Graphics2D graphics) {
-        _displayHeader.paintComponent(graphics);
-        graphics.translate(0, _displayHeader.getHeight());
-        paintComponent(graphics);
+        setupGraphics(graphics);
+        _diagram.paintHeader(graphics);
+        graphics.translate(0, _diagram.getPreferredHeaderSize().height);
+        paintComponent(graphics, false);
     }
 
     private class DisplayHeader extends JComponent {
@@ -322,14 +721,15 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         }
 
         public Dimension getPreferredSize() {
-            return _diagram.getPreferredHeaderSize();
+            return zoomed(_diagram.getPreferredHeaderSize());
         }
 
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
             Graphics2D g2 = (Graphics2D) g;
             setupGraphics(g2);
-            _diagram.paintHeader(g2);
+            g2.scale(_zoom, _zoom);
+            _diagram.paintHeader(g2, isLowDetail(_zoom));
         }
 
         public String getToolTipText(MouseEvent event) {
@@ -343,11 +743,12 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         public void mouseReleased(MouseEvent e) {
             if (selectedScreenObject != null) {
                 selectedScreenObject.setSelected(false);
+                invalidateTiles(selectedScreenObject);
                 selectedScreenObject = null;
                 repaint();
             }
 
-            ScreenObject screenObject = _diagram.findScreenObjectByXY(e.getX(), e.getY());
+            ScreenObject screenObject = findScreenObject(e);
             if (screenObject == null)
                 return;
             setSelected(screenObject);
@@ -359,8 +760,8 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
 
         @Override
         public void mousePressed(MouseEvent e) {
-
-            ScreenObject screenObject = _diagram.findScreenObjectByXY(e.getX(), e.getY());
+            requestFocusInWindow();
+            ScreenObject screenObject = findScreenObject(e);
             if (screenObject == null)
                 return;
 //            setSelected(screenObject);
@@ -368,6 +769,14 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
                 _listener.displayMenuForScreenObject(screenObject, e.getX(), e.getY());
         }
 
+        /**
+         * Select the copy of the selected shape after a layout or a fold copied the shapes.
+         */
+        void followSelection() {
+            if (selectedScreenObject != null)
+                selectedScreenObject = _diagram.find(selectedScreenObject);
+        }
+
         private boolean isDoubleClick(MouseEvent e) {
             return e.getClickCount() >= 2;
         }
@@ -375,9 +784,18 @@ public class Display extends JComponent implements ModelTextListener, Scrollable
         private void setSelected(ScreenObject screenObject) {
             selectedScreenObject = screenObject;
             selectedScreenObject.setSelected(true);
+            invalidateTiles(selectedScreenObject);
             repaint();
         }
 
+        private void invalidateTiles(ScreenObject screenObject) {
+            // the selection stroke and the arrow heads reach a few pixels past the shape
+            Rectangle bounds = new Rectangle(screenObject.getX(), screenObject.getY(),
+                    screenObject.getWidth(), screenObject.getHeight());
+            bounds.grow(4, 4);
+            _tiles.invalidate(bounds);
+        }
+
         private void repaint() {
             repaintAll();
         }
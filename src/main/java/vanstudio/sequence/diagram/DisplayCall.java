@@ -1,6 +1,7 @@
 package vanstudio.sequence.diagram;
 
 import java.awt.*;
+import java.io.IOException;
 
 public class DisplayCall extends DisplayLink {
 
@@ -28,6 +29,13 @@ public class DisplayCall extends DisplayLink {
         }
     }
 
+    @Override
+    void writeSvgLine(SvgWriter svg) throws IOException {
+        if (_from.getObjectInfo().hasAttribute(Info.INTERFACE_ATTRIBUTE) || _from.getObjectInfo().hasAttribute(Info.ABSTRACT_ATTRIBUTE))
+            writeSvgLine(svg, SvgWriter.INTERFACE_CALL);
+        else
+            super.writeSvgLine(svg);
+    }
 
     public String toString() {
         return "DisplayCall " + _link.getName() + " from " + _from + " to " + _to + " seq " + _seq;
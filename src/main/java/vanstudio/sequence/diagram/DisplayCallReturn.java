@@ -1,6 +1,7 @@
 package vanstudio.sequence.diagram;
 
 import java.awt.*;
+import java.io.IOException;
 
 public class DisplayCallReturn extends DisplayLink {
 
@@ -26,6 +27,15 @@ public class DisplayCallReturn extends DisplayLink {
         g2.setStroke(oldStroke);
     }
 
+    @Override
+    void writeSvgText(SvgWriter svg) {
+    }
+
+    @Override
+    void writeSvgLine(SvgWriter svg) throws IOException {
+        writeSvgLine(svg, SvgWriter.RETURN);
+    }
+
     public String toString() {
         return "DisplayCallReturn " + _link.getName() + " from <" + _from + "> to <" + _to + "> seq " + _seq;
     }
@@ -33,5 +43,9 @@ public class DisplayCallReturn extends DisplayLink {
     public boolean isReturnLink() {
         return true;
     }
+
+    boolean isPainted(boolean showReturnArrows) {
+        return showReturnArrows && !_to.getObjectInfo().isActor();
+    }
 }
 
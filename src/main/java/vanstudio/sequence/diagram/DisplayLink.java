@@ -1,19 +1,17 @@
 package vanstudio.sequence.diagram;
 
-import com.intellij.ui.JBColor;
-
 import java.awt.*;
 import java.awt.geom.GeneralPath;
+import java.io.IOException;
 
 public class DisplayLink extends ScreenObject {
-    private static final Paint TEXT_COLOR = JBColor.foreground();
-    private static final Paint LINK_COLOR = JBColor.foreground();
     private static final Stroke DASH_STROKE = new BasicStroke(1.0f,
           BasicStroke.CAP_SQUARE,
           BasicStroke.JOIN_MITER,
           4.0f,
           new float[]{4.0f, 2.0f},
           0.0f);
+    private static final Stroke SELECTED_STROKE = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
 
     protected Link _link;
     protected DisplayObject _from;
@@ -21,12 +19,15 @@ public class DisplayLink extends ScreenObject {
     protected TextBox _textBox;
     int _textXOffset = -1;
 
-    int _y = -1;
     int _seq;
+    /** set after the positions, so that a painting thread seeing it sees them */
+    private volatile boolean _positioned;
 
     int _lineStartX = -1;
     int _lineEndX = -1;
 
+    private int _foldDepth = 0;
+
     DisplayLink(Link link, DisplayObject from, DisplayObject to, int seq) {
         _from = from;
         _to = to;
@@ -37,6 +38,18 @@ public class DisplayLink extends ScreenObject {
 
     void initOne(Graphics2D g2) {
         _textBox.init(g2);
+        _positioned = false;
+    }
+
+    /**
+     * Work out the horizontal position of the link the first time it is needed, so that a
+     * very long diagram only measures the links that are looked at.
+     */
+    void position() {
+        if (!_positioned) {
+            initTwo();
+            _positioned = true;
+        }
     }
 
     void initTwo() {
@@ -72,19 +85,18 @@ public class DisplayLink extends ScreenObject {
         return _seq;
     }
 
-    void setY(int y) {
-        _y = y;
-    }
-
     public int getY() {
-        return _y;
+        RowIndex rows = _from.getRows();
+        return rows == null ? -1 : rows.getY(_seq);
     }
 
     public int getX() {
+        position();
         return _from.getSeq() <= _to.getSeq()? _lineStartX: _lineEndX;
     }
 
     public int getWidth() {
+        position();
         return Math.max(Math.abs(_lineEndX - _lineStartX), getTextWidth());
     }
 
@@ -96,6 +108,10 @@ public class DisplayLink extends ScreenObject {
         return _textBox.getWidth();
     }
 
+    int estimateTextWidth(int charWidth) {
+        return _textBox.estimateWidth(charWidth);
+    }
+
     public int getTextHeight() {
         return _textBox.getHeight();
     }
@@ -104,6 +120,13 @@ public class DisplayLink extends ScreenObject {
         return 0;
     }
 
+    /**
+     * @return the room the link takes in the diagram, 0 when it is hidden by a fold
+     */
+    int getRowHeight() {
+        return isHidden() ? 0 : getTextHeight() + getLinkHeight();
+    }
+
     public String getToolTip() {
         return _link.getName();
     }
@@ -112,13 +135,65 @@ public class DisplayLink extends ScreenObject {
         return _from.getSeq() == _to.getSeq();
     }
 
+    /**
+     * Called once for each folded activation enclosing this link.
+     */
+    void fold() {
+        ++_foldDepth;
+    }
+
+    void unfold() {
+        --_foldDepth;
+    }
+
+    /**
+     * @return true if the link is inside a folded activation and takes no room in the diagram.
+     */
+    public boolean isHidden() {
+        return _foldDepth > 0;
+    }
+
+    /**
+     * Fold the link like the link it is copied from.
+     */
+    void copyFoldState(DisplayLink link) {
+        _foldDepth = link._foldDepth;
+    }
+
+    /**
+     * Take the fold and the selection of the link it is copied from, and with
+     * <code>keepLayout</code> its label and position as well.
+     */
+    void copyState(DisplayLink link, boolean keepLayout) {
+        copyFoldState(link);
+        setSelected(link.isSelected());
+        if (keepLayout) {
+            _textBox = link._textBox;
+            if (link._positioned) {
+                _lineStartX = link._lineStartX;
+                _lineEndX = link._lineEndX;
+                _textXOffset = link._textXOffset;
+                _positioned = true;
+            }
+        }
+    }
+
+    /**
+     * @param showReturnArrows the show return arrows setting
+     * @return false for links which are never drawn
+     */
+    boolean isPainted(boolean showReturnArrows) {
+        return true;
+    }
+
     public void paint(Graphics2D g2) {
         Rectangle clipBounds = g2.getClipBounds();
         if(clipBounds != null && !clipBounds.intersects(getX(), getY(), getWidth(), getHeight()))
             return;
+        position();
         Stroke oldStroke = g2.getStroke();
         if(isSelected())
-            g2.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2.setStroke(SELECTED_STROKE);
         drawText(g2);
         drawLine(g2);
         if (isReturnLink()) {
@@ -129,8 +204,17 @@ public class DisplayLink extends ScreenObject {
         g2.setStroke(oldStroke);
     }
  
+    /**
+     * Cheap version of paint for small scales: the line only, without label or arrow head.
+     */
+    void paintLowDetail(Graphics2D g2) {
+        position();
+        g2.setPaint(RenderStyle.foreground(g2));
+        g2.drawLine(_lineStartX, getEndY(), _lineEndX, getEndY());
+    }
+
     void drawText(Graphics2D g2) {
-        g2.setPaint(TEXT_COLOR);
+        g2.setPaint(RenderStyle.foreground(g2));
         int textX = getX() + _textXOffset + _textBox.getPad();
         int textY = getY() + _textBox.getTextOffset();
         if(isSelected()) {
@@ -142,7 +226,7 @@ public class DisplayLink extends ScreenObject {
         }
         Font oldFont = g2.getFont();
         if(_link.getMethodInfo().hasAttribute(Info.ABSTRACT_ATTRIBUTE))
-            g2.setFont(new Font(oldFont.getFontName(), Font.ITALIC, oldFont.getSize()));
+            g2.setFont(_from.getStyle().italicFont);
         g2.drawString(_link.getName(), textX, textY);
         if(_link.getMethodInfo().hasAttribute(Info.STATIC_ATTRIBUTE)) {
             int y = textY + g2.getFontMetrics().getDescent() - 1;
@@ -152,7 +236,7 @@ public class DisplayLink extends ScreenObject {
     }
 
     void drawLine(Graphics2D g2) {
-        g2.setPaint(LINK_COLOR);
+        g2.setPaint(RenderStyle.foreground(g2));
         g2.drawLine(_lineStartX, getEndY(), _lineEndX, getEndY());
     }
 
@@ -198,6 +282,33 @@ public class DisplayLink extends ScreenObject {
         g2.fill(filledPolygon);
     }
 
+    void writeSvg(SvgWriter svg) throws IOException {
+        position();
+        writeSvgText(svg);
+        writeSvgLine(svg);
+        writeSvgArrow(svg);
+    }
+
+    void writeSvgText(SvgWriter svg) throws IOException {
+        Info methodInfo = _link.getMethodInfo();
+        String cssClass = methodInfo.hasAttribute(Info.ABSTRACT_ATTRIBUTE) ? SvgWriter.ITALIC : null;
+        if(methodInfo.hasAttribute(Info.STATIC_ATTRIBUTE))
+            cssClass = cssClass == null ? SvgWriter.STATIC : cssClass + ' ' + SvgWriter.STATIC;
+        svg.text(_link.getName(), getX() + _textXOffset + _textBox.getPad(), getY() + _textBox.getTextOffset(), cssClass);
+    }
+
+    void writeSvgLine(SvgWriter svg) throws IOException {
+        writeSvgLine(svg, null);
+    }
+
+    final void writeSvgLine(SvgWriter svg, String cssClass) throws IOException {
+        svg.line(_lineStartX, getEndY(), _lineEndX, getEndY(), cssClass);
+    }
+
+    void writeSvgArrow(SvgWriter svg) throws IOException {
+        svg.arrow(_lineEndX, getEndY(), _lineStartX >= _lineEndX, !isReturnLink());
+    }
+
     public boolean isReturnLink() {
         return false;
     }
@@ -2,15 +2,14 @@ package vanstudio.sequence.diagram;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.ui.JBColor;
-import vanstudio.sequence.config.SequenceSettingsState;
 
 import java.awt.*;
+import java.io.IOException;
 
 public class DisplayMethod extends ScreenObject {
 
     private static final Logger LOGGER = Logger.getInstance(DisplayMethod.class);
 
-    private static final Paint LINE_COLOR = JBColor.foreground();
     private static final Paint SHADOW_COLOR = JBColor.LIGHT_GRAY;
 
     private ObjectInfo _objectInfo;
@@ -18,6 +17,7 @@ public class DisplayMethod extends ScreenObject {
     private DisplayLink _call;
     private DisplayLink _callReturn;
     private int _horizontalSeq;
+    private boolean _folded;
 
     DisplayMethod(ObjectInfo objectInfo, MethodInfo methodInfo,
                   DisplayLink call, DisplayLink callReturn) {
@@ -33,6 +33,10 @@ public class DisplayMethod extends ScreenObject {
         _horizontalSeq = horizontalSeq;
     }
 
+    int getHorizontalSeq() {
+        return _horizontalSeq;
+    }
+
     public MethodInfo getMethodInfo() {
         return _methodInfo;
     }
@@ -49,20 +53,73 @@ public class DisplayMethod extends ScreenObject {
         return _objectInfo;
     }
 
+    /**
+     * @return true if the activation makes any call, i.e. it can be folded.
+     */
+    public boolean hasCalls() {
+        return getEndSeq() - getStartSeq() > 1;
+    }
+
+    public boolean isFolded() {
+        return _folded;
+    }
+
+    void setFolded(boolean folded) {
+        _folded = folded;
+    }
+
+    /**
+     * Take the fold and the selection of the activation it is copied from.
+     */
+    void copyState(DisplayMethod method) {
+        _folded = method._folded;
+        setSelected(method.isSelected());
+    }
+
+    boolean isHidden() {
+        return _call.isHidden();
+    }
+
     public String getToolTip() {
         return _methodInfo.getHtmlDescription();
     }
 
     public void paint(Graphics2D g2) {
-        SequenceSettingsState sequenceSettingsState = SequenceSettingsState.getInstance();
-        if(sequenceSettingsState.USE_3D_VIEW) {
+        RenderStyle style = _call.getTo().getStyle();
+        if(style.use3dView) {
             g2.setPaint(SHADOW_COLOR);
             g2.fillRect(getX() + 2, getY() + 2, getWidth(), getHeight());
         }
-        g2.setPaint(isSelected() ? sequenceSettingsState.SELECTED_METHOD_BAR_COLOR : sequenceSettingsState.METHOD_BAR_COLOR);
+        g2.setPaint(isSelected() ? style.selectedMethodBarColor : style.methodBarColor);
         g2.fillRect(getX(), getY(), getWidth(), getHeight());
-        g2.setPaint(LINE_COLOR);
+        g2.setPaint(RenderStyle.foreground(g2));
         g2.drawRect(getX(), getY(), getWidth() - 1, getHeight() - 1);
+        if(_folded)
+            paintFoldMarker(g2);
+    }
+
+    /**
+     * Cheap version of paint for small scales: the bar without border or shadow.
+     */
+    void paintLowDetail(Graphics2D g2) {
+        RenderStyle style = _call.getTo().getStyle();
+        g2.setPaint(isSelected() ? style.selectedMethodBarColor : style.methodBarColor);
+        g2.fillRect(getX(), getY(), getWidth(), getHeight());
+    }
+
+    private void paintFoldMarker(Graphics2D g2) {
+        int centerX = getX() + getWidth() / 2;
+        int centerY = getY() + getHeight() / 2;
+        g2.drawLine(centerX - 2, centerY, centerX + 2, centerY);
+        g2.drawLine(centerX, centerY - 2, centerX, centerY + 2);
+    }
+
+    void writeSvg(SvgWriter svg) throws IOException {
+        if(_call.getTo().getStyle().use3dView)
+            svg.shadow(getX(), getY(), getWidth(), getHeight());
+        svg.box(getX(), getY(), getWidth(), getHeight(), SvgWriter.BAR);
+        if(_folded)
+            svg.foldMarker(getX() + getWidth() / 2, getY() + getHeight() / 2);
     }
 
     public int getHeight() {
@@ -2,20 +2,19 @@ package vanstudio.sequence.diagram;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.ui.JBColor;
-import vanstudio.sequence.config.ColorSupport;
-import vanstudio.sequence.config.SequenceSettingsState;
 
 import java.awt.*;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 public class DisplayObject extends ScreenObject {
     private static final Logger LOGGER = Logger.getInstance(DisplayObject.class);
 
-    private static final Paint BORDER_COLOR = JBColor.foreground();
     private static final Paint TEXT_COLOR = Color.DARK_GRAY;
-    private static final Paint LINE_COLOR =  JBColor.foreground();
     private static final Paint SHADOW_COLOR = JBColor.LIGHT_GRAY;
     private static final Stroke DASH_STROKE = new BasicStroke(1.0f,
             BasicStroke.CAP_SQUARE,
@@ -23,6 +22,7 @@ public class DisplayObject extends ScreenObject {
             12.0f,
             new float[]{12.0f, 6.0f},
             0.0f);
+    private static final Stroke SELECTED_STROKE = new BasicStroke(2);
 
     private int _x = -1;
     private int _y = -1;
@@ -31,14 +31,75 @@ public class DisplayObject extends ScreenObject {
     private int _fullHeight;
     private int _fullWidth;
     private final ObjectInfo _objectInfo;
-
-    private final List<DisplayLink> _calls = Collections.synchronizedList(new ArrayList<>());
-    private final List<DisplayLink> _returns = Collections.synchronizedList(new ArrayList<>());
-    private final List<DisplayMethod> _methods = Collections.synchronizedList(new ArrayList<>());
+    private final int _seq;
+
+    // filled while the diagram is built and frozen by seal() before it is published
+    private List<DisplayLink> _calls = new ArrayList<>();
+    private List<DisplayLink> _returns = new ArrayList<>();
+    private List<DisplayMethod> _methods = new ArrayList<>();
+    /** activations ordered by start row */
+    private DisplayMethod[] _methodIndex = new DisplayMethod[0];
+    /** index in <code>_methodIndex</code> of the enclosing activation, or -1 */
+    private int[] _enclosing = new int[0];
+    private DisplayMethod _deepestMethod;
+    private RowIndex _rows;
+
+    // resolved by setStyle() when the diagram is laid out
+    private RenderStyle _style;
+    private Paint _headerColor;
+    /** colour of the user's colour mapping, or null */
+    private Paint _overlayColor;
+    private Font _headerFont;
 
     DisplayObject(ObjectInfo objectInfo) {
+        this(objectInfo, objectInfo.getSeq());
+    }
+
+    /**
+     * @param seq column of the lifeline, which in a slice of a diagram is not the one of the object
+     */
+    DisplayObject(ObjectInfo objectInfo, int seq) {
+        this(objectInfo, seq, new TextBox(objectInfo.getName()));
+    }
+
+    private DisplayObject(ObjectInfo objectInfo, int seq, TextBox textBox) {
         _objectInfo = objectInfo;
-        _textBox = new TextBox(objectInfo.getName());
+        _seq = seq;
+        _textBox = textBox;
+    }
+
+    /**
+     * @param keepLayout keep the position, measures and style, e.g. for a fold; a layout measures
+     *                   everything again
+     * @return a copy without calls, returns or activations, which the copies of those add to it
+     */
+    DisplayObject copy(boolean keepLayout) {
+        DisplayObject copy = new DisplayObject(_objectInfo, _seq, keepLayout ? _textBox : new TextBox(_objectInfo.getName()));
+        copy.setSelected(isSelected());
+        if (keepLayout) {
+            copy._x = _x;
+            copy._y = _y;
+            copy._width = _width;
+            copy._fullHeight = _fullHeight;
+            copy._fullWidth = _fullWidth;
+            copy._rows = _rows;
+            copy._style = _style;
+            copy._headerColor = _headerColor;
+            copy._overlayColor = _overlayColor;
+            copy._headerFont = _headerFont;
+        }
+        return copy;
+    }
+
+    void setStyle(RenderStyle style) {
+        _style = style;
+        _headerColor = style.getHeaderColor(_objectInfo);
+        _overlayColor = style.getOverlayColor(_objectInfo);
+        _headerFont = _objectInfo.hasAttribute(Info.ABSTRACT_ATTRIBUTE) ? style.italicFont : style.font;
+    }
+
+    RenderStyle getStyle() {
+        return _style;
     }
 
     void initializeGraphics(Graphics2D g2) {
@@ -84,24 +145,92 @@ public class DisplayObject extends ScreenObject {
             displayMethod.setHorizontalSeq(0);
         } else {
             int enclosingCount = 0;
-            synchronized (_methods) {
-                for (DisplayMethod otherMb : _methods) {
-                    if ((otherMb.getStartSeq() < displayMethod.getStartSeq()) &&
-                            (otherMb.getEndSeq() > displayMethod.getEndSeq()))
-                        ++enclosingCount;
-                }
+            for (DisplayMethod otherMb : _methods) {
+                if ((otherMb.getStartSeq() < displayMethod.getStartSeq()) &&
+                        (otherMb.getEndSeq() > displayMethod.getEndSeq()))
+                    ++enclosingCount;
             }
             displayMethod.setHorizontalSeq(enclosingCount);
         }
         _methods.add(displayMethod);
     }
 
+    /**
+     * Add an activation copied from another diagram, keeping the nesting it has there.
+     */
+    void addMethod(DisplayMethod displayMethod, int horizontalSeq) {
+        displayMethod.setHorizontalSeq(horizontalSeq);
+        _methods.add(displayMethod);
+    }
+
+    /**
+     * Freeze the calls, returns and activations once the diagram is built, and index the
+     * activations by row. The activations of a lifeline nest like the calls they come from, so
+     * each one only has to know the activation directly around it.
+     */
+    void seal() {
+        _calls = List.copyOf(_calls);
+        _returns = List.copyOf(_returns);
+        _methods = List.copyOf(_methods);
+
+        DisplayMethod[] methods = _methods.toArray(new DisplayMethod[0]);
+        Arrays.sort(methods, Comparator.comparingInt(DisplayMethod::getStartSeq));
+        int[] enclosing = new int[methods.length];
+        int[] stack = new int[methods.length];
+        int top = 0;
+        DisplayMethod deepest = null;
+        for (int i = 0; i < methods.length; ++i) {
+            while (top > 0 && methods[stack[top - 1]].getEndSeq() < methods[i].getStartSeq())
+                --top;
+            enclosing[i] = top == 0 ? -1 : stack[top - 1];
+            stack[top++] = i;
+            if (deepest == null || deepest.getHorizontalSeq() < methods[i].getHorizontalSeq())
+                deepest = methods[i];
+        }
+        _methodIndex = methods;
+        _enclosing = enclosing;
+        _deepestMethod = deepest;
+    }
+
+    List<DisplayMethod> getMethods() {
+        return _methods;
+    }
+
+    boolean hasMethods() {
+        return _methodIndex.length > 0;
+    }
+
+    /**
+     * @return left edge of the activations, the outermost ones are drawn furthest left
+     */
+    int getMethodsLeft() {
+        return _methodIndex[0].getX();
+    }
+
+    /**
+     * @return right edge of the activations
+     */
+    int getMethodsRight() {
+        return _deepestMethod.getX() + _deepestMethod.getWidth();
+    }
+
+    /**
+     * @param rows the row index of the links, shared by all lifelines of the diagram
+     */
+    void setRows(RowIndex rows) {
+        _rows = rows;
+    }
+
+    RowIndex getRows() {
+        return _rows;
+    }
+
     public ObjectInfo getObjectInfo() {
         return _objectInfo;
     }
 
     int getSeq() {
-        return _objectInfo.getSeq();
+        return _seq;
     }
 
     void setX(int x) {
@@ -191,53 +320,127 @@ public class DisplayObject extends ScreenObject {
         return depth;
     }
 
-    public DisplayMethod findMethod(int x, int y) {
-        DisplayMethod selectedMethodBox = null;
-        synchronized (_methods) {
-            for (DisplayMethod methodBox : _methods) {
-                if (methodBox.isInRange(x, y))
-                    if ((selectedMethodBox == null || selectedMethodBox.getX() < methodBox.getX()))
-                        selectedMethodBox = methodBox;
-            }
+    /**
+     * Find the activation at x, y using the row index.
+     *
+     * @param row the row at y
+     */
+    DisplayMethod findMethod(int x, int y, int row) {
+        DisplayMethod[] methods = _methodIndex;
+        int[] enclosing = _enclosing;
+        // the activations open at the row are the last one started at or above it and the ones
+        // around that; walking outwards, the first hit is the deepest and so the rightmost
+        for (int i = firstStartingAt(methods, row + 1) - 1; i != -1; i = enclosing[i]) {
+            DisplayMethod methodBox = methods[i];
+            if (!methodBox.isHidden() && methodBox.isInRange(x, y))
+                return methodBox;
         }
-        return selectedMethodBox;
+        return null;
     }
 
+    /**
+     * Paint the lifeline and its activations. Links are painted by the <code>Diagram</code>,
+     * which only visits the rows inside the clip.
+     */
     public void paint(Graphics2D g2) {
+        paint(g2, 0, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Paint the lifeline and the activations overlapping the given rows.
+     * @param lowDetail draw a plain line and bars only, for small scales
+     */
+    void paint(Graphics2D g2, int firstRow, int lastRow, boolean lowDetail) {
         if(isInClipArea(g2, _fullHeight)) {
-            g2.setPaint(LINE_COLOR);
-            Stroke oldStroke = g2.getStroke();
-            g2.setStroke(DASH_STROKE);
-            g2.drawLine(getCenterX(), 0, getCenterX(), _fullHeight);
-            g2.setStroke(oldStroke);
-
-            synchronized (_methods) {
-                for (DisplayMethod methodBox : _methods) {
-                    methodBox.paint(g2);
-                }
+            g2.setPaint(RenderStyle.foreground(g2));
+            if (lowDetail) {
+                g2.drawLine(getCenterX(), 0, getCenterX(), _fullHeight);
+            } else {
+                Stroke oldStroke = g2.getStroke();
+                g2.setStroke(DASH_STROKE);
+                g2.drawLine(getCenterX(), 0, getCenterX(), _fullHeight);
+                g2.setStroke(oldStroke);
             }
+
+            paintMethods(g2, firstRow, lastRow, lowDetail);
         }
+    }
 
-        synchronized (_calls) {
-            for (DisplayLink displayLink : _calls) {
-//            if (displayLink.getLink().isBootstrap())
-//                continue;
-                displayLink.paint(g2);
-            }
+    private void paintMethods(Graphics2D g2, int firstRow, int lastRow, boolean lowDetail) {
+        DisplayMethod[] methods = _methodIndex;
+        int[] enclosing = _enclosing;
+        int from = firstStartingAt(methods, firstRow);
+        paintOpenMethods(g2, methods, enclosing, from - 1, firstRow, lowDetail);
+        for (int i = from; i < methods.length && methods[i].getStartSeq() <= lastRow; ++i) {
+            paintMethod(g2, methods[i], lowDetail);
         }
+    }
 
-        synchronized (_returns) {
-            for (DisplayLink displayLink : _returns) {
-                // todo make it configurable
-                if (displayLink instanceof DisplaySelfCallReturn /*|| displayLink.getLink().isBootstrap()*/)
-                    continue;
-                if (!SequenceSettingsState.getInstance().SHOW_RETURN_ARROWS && displayLink instanceof DisplayCallReturn)
-                    continue;
-                if (displayLink.getTo().getObjectInfo().getName().equals(ObjectInfo.ACTOR_NAME))
-                    continue;
-                displayLink.paint(g2);
-            }
+    /**
+     * Paint the activations around activation <code>i</code> which are still open at the row,
+     * outermost first, so that the nested ones are painted over them.
+     */
+    private static void paintOpenMethods(Graphics2D g2, DisplayMethod[] methods, int[] enclosing, int i,
+                                         int firstRow, boolean lowDetail) {
+        if (i == -1)
+            return;
+        paintOpenMethods(g2, methods, enclosing, enclosing[i], firstRow, lowDetail);
+        if (methods[i].getEndSeq() >= firstRow)
+            paintMethod(g2, methods[i], lowDetail);
+    }
+
+    /**
+     * @return the activations overlapping the given rows, in the order they are painted, for slicing
+     */
+    List<DisplayMethod> getMethods(int firstRow, int lastRow) {
+        DisplayMethod[] methods = _methodIndex;
+        int[] enclosing = _enclosing;
+        int from = firstStartingAt(methods, firstRow);
+
+        // activations started above the window which are still open in it, outermost first
+        List<DisplayMethod> result = new ArrayList<>();
+        for (int i = from - 1; i != -1; i = enclosing[i]) {
+            if (methods[i].getEndSeq() >= firstRow)
+                result.add(methods[i]);
+        }
+        Collections.reverse(result);
+        for (int i = from; i < methods.length && methods[i].getStartSeq() <= lastRow; ++i) {
+            result.add(methods[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the activation opened by the call at the row, or null
+     */
+    DisplayMethod findMethodStartingAt(int row) {
+        DisplayMethod[] methods = _methodIndex;
+        int i = firstStartingAt(methods, row);
+        return i < methods.length && methods[i].getStartSeq() == row ? methods[i] : null;
+    }
+
+    private static void paintMethod(Graphics2D g2, DisplayMethod methodBox, boolean lowDetail) {
+        if (methodBox.isHidden())
+            return;
+        if (lowDetail)
+            methodBox.paintLowDetail(g2);
+        else
+            methodBox.paint(g2);
+    }
+
+    /**
+     * @return index of the first activation starting at or below the row
+     */
+    private static int firstStartingAt(DisplayMethod[] methods, int row) {
+        int low = 0, high = methods.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (methods[mid].getStartSeq() < row)
+                low = mid + 1;
+            else
+                high = mid;
         }
+        return low;
     }
 
     private boolean isInClipArea(Graphics2D g2, int height) {
@@ -247,43 +450,75 @@ public class DisplayObject extends ScreenObject {
         return clipBounds.intersects(getX(), 0, getX() + _fullWidth, height);
     }
 
+    /**
+     * Cheap version of paintHeader for small scales: the box without text, shadow or overlay.
+     */
+    void paintHeaderLowDetail(Graphics2D g2) {
+        if(!isInClipArea(g2, getPreferredHeaderHeight()))
+            return;
+        g2.setPaint(_headerColor);
+        g2.fillRect(_x, _y, _textBox.getWidth(), _textBox.getHeight());
+        g2.setPaint(RenderStyle.foreground(g2));
+        g2.drawRect(_x, _y, _textBox.getWidth() - 1, _textBox.getHeight() - 1);
+    }
+
     public void paintHeader(Graphics2D g2) {
         if(!isInClipArea(g2, getPreferredHeaderHeight()))
             return;
-        SequenceSettingsState sequenceSettingsState = SequenceSettingsState.getInstance();
-        if(sequenceSettingsState.USE_3D_VIEW) {
+        if(_style.use3dView) {
             g2.setPaint(SHADOW_COLOR);
             g2.fillRect(_x + 2, _y + 2, _textBox.getWidth(), _textBox.getHeight());
         }
-        g2.setPaint(determineBackgroundPaintForObject(sequenceSettingsState));
+        g2.setPaint(_headerColor);
         g2.fillRect(_x, _y, _textBox.getWidth(), _textBox.getHeight());
 
-        g2.setPaint(BORDER_COLOR);
+        g2.setPaint(RenderStyle.foreground(g2));
         Stroke oldStroke = g2.getStroke();
         if(isSelected()) {
-            g2.setStroke(new BasicStroke(2));
+            g2.setStroke(SELECTED_STROKE);
         }
         g2.drawRect(_x, _y, _textBox.getWidth() - 1, _textBox.getHeight() - 1);
         g2.setStroke(oldStroke);
 
-        ColorSupport.lookupMappedColorFor(sequenceSettingsState, _objectInfo.getFullName())
-        .ifPresent(paint->{
+        if(_overlayColor != null) {
             // draw a colored overlay, as per user's color mapping config
             int overlayBoxSize = _textBox.getHeight()/3;
-            g2.setPaint(ColorSupport.withTransparency((Color)paint,0.8f));
+            g2.setPaint(_overlayColor);
             g2.fillRect(_x-2, _y-2, overlayBoxSize, overlayBoxSize);
-        });
+        }
 
         g2.setPaint(TEXT_COLOR);
         Font oldFont = g2.getFont();
-        if(_objectInfo.hasAttribute(Info.ABSTRACT_ATTRIBUTE))
-            g2.setFont(new Font(oldFont.getFontName(), Font.ITALIC, oldFont.getSize()));
+        g2.setFont(_headerFont);
         g2.drawString(_objectInfo.getName(), _x + _textBox.getPad(), _y + _textBox.getTextOffset());
         g2.setFont(oldFont);
     }
 
+    void writeSvgHeader(SvgWriter svg) throws IOException {
+        if(_style.use3dView)
+            svg.shadow(_x, _y, _textBox.getWidth(), _textBox.getHeight());
+        svg.box(_x, _y, _textBox.getWidth(), _textBox.getHeight(), SvgWriter.headerClass(_objectInfo));
+        if(_overlayColor != null)
+            svg.overlay(_x - 2, _y - 2, _textBox.getHeight() / 3, _overlayColor);
+        svg.text(_objectInfo.getName(), _x + _textBox.getPad(), _y + _textBox.getTextOffset(),
+                _objectInfo.hasAttribute(Info.ABSTRACT_ATTRIBUTE)
+                        ? SvgWriter.HEADER_TEXT + ' ' + SvgWriter.ITALIC
+                        : SvgWriter.HEADER_TEXT);
+    }
+
+    /**
+     * Write the lifeline and its activations, outermost first as they are painted.
+     */
+    void writeSvg(SvgWriter svg) throws IOException {
+        svg.line(getCenterX(), 0, getCenterX(), _fullHeight, SvgWriter.LIFELINE);
+        for (DisplayMethod methodBox : _methodIndex) {
+            if (!methodBox.isHidden())
+                methodBox.writeSvg(svg);
+        }
+    }
+
     public int getPreferredHeaderHeight() {
-        int yDelta = SequenceSettingsState.getInstance().USE_3D_VIEW? 2: 0;
+        int yDelta = _style != null && _style.use3dView ? 2: 0;
         return _y + _textBox.getHeight() + yDelta;
     }
 
@@ -295,14 +530,6 @@ public class DisplayObject extends ScreenObject {
         return "DisplayObject " + _objectInfo.getName() + " seq " + _objectInfo.getSeq();
     }
 
-    private Paint determineBackgroundPaintForObject(SequenceSettingsState sequenceSettingsState) {
-        return _objectInfo.hasAttribute(Info.EXTERNAL_ATTRIBUTE)
-                ? sequenceSettingsState.EXTERNAL_CLASS_COLOR
-                : _objectInfo.hasAttribute(Info.INTERFACE_ATTRIBUTE)
-                    ? sequenceSettingsState.INTERFACE_COLOR
-                    : sequenceSettingsState.CLASS_COLOR;
-    }
-
 
 }
 
@@ -33,6 +33,10 @@ public class DisplaySelfCallReturn extends DisplaySelfLink {
         return true;
     }
 
+    boolean isPainted(boolean showReturnArrows) {
+        return false;
+    }
+
     public String toString() {
         return "DisplaySelfCallReturn " + _link.getName() + " from <" + _from + "> to <" + _to + "> seq " + _seq;
     }
@@ -1,6 +1,7 @@
 package vanstudio.sequence.diagram;
 
 import java.awt.*;
+import java.io.IOException;
 
 public class DisplaySelfLink extends DisplayLink {
 
@@ -28,6 +29,13 @@ public class DisplaySelfLink extends DisplayLink {
         g2.drawLine(_lineStartX, getEndY() + getLinkHeight(), _lineEndX, getEndY() + getLinkHeight());
     }
 
+    @Override
+    void paintLowDetail(Graphics2D g2) {
+        super.paintLowDetail(g2);
+        g2.drawLine(_lineEndX, getEndY(), _lineEndX, getEndY() + getLinkHeight());
+        g2.drawLine(_lineStartX, getEndY() + getLinkHeight(), _lineEndX, getEndY() + getLinkHeight());
+    }
+
     void drawArrow(Graphics2D g2) {
         int lineY = getEndY() + getLinkHeight();
         int arrowTailX = _lineStartX + 4;
@@ -45,6 +53,18 @@ public class DisplaySelfLink extends DisplayLink {
         fillPolygon(g2, xPoints, yPoints);
     }
 
+    @Override
+    void writeSvgLine(SvgWriter svg) throws IOException {
+        super.writeSvgLine(svg);
+        svg.line(_lineEndX, getEndY(), _lineEndX, getEndY() + getLinkHeight(), null);
+        svg.line(_lineStartX, getEndY() + getLinkHeight(), _lineEndX, getEndY() + getLinkHeight(), null);
+    }
+
+    @Override
+    void writeSvgArrow(SvgWriter svg) throws IOException {
+        svg.arrow(_lineStartX, getEndY() + getLinkHeight(), true, !isReturnLink());
+    }
+
     public String toString() {
         return "DisplaySelfLink " + _link.getName() + " from " + _from + " to " + _to + " seq " + _seq;
     }
@@ -4,7 +4,11 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-public class Numbering {
+/**
+ * The numbers of a call, <code>3.2</code> for the second call made by the third call. Numberings
+ * are ordered like the calls are made.
+ */
+public class Numbering implements Comparable<Numbering> {
     private List<Integer> _numbers;
 
     private Numbering(List<Integer> numbers) {
@@ -15,6 +19,20 @@ public class Numbering {
         _numbers = fromNumbering != null? new ArrayList<>(fromNumbering._numbers): new ArrayList<>();
     }
 
+    /**
+     * @param name numbers separated by dots, as returned by {@link #getName()}
+     * @return null if the name is not a numbering
+     */
+    public static Numbering parse(String name) {
+        List<Integer> numbers = new ArrayList<>();
+        for (String number : name.trim().split("\\.", -1)) {
+            if (number.isEmpty() || number.length() > 9 || !number.chars().allMatch(c -> c >= '0' && c <= '9'))
+                return null;
+            numbers.add(Integer.parseInt(number));
+        }
+        return new Numbering(numbers);
+    }
+
     public int level() {
         return _numbers.size();
     }
@@ -52,6 +70,28 @@ public class Numbering {
         return new Numbering(numbers);
     }
 
+    /**
+     * @return whether this is the numbering of the call or of a call it makes, directly or not
+     */
+    public boolean startsWith(Numbering call) {
+        return _numbers.size() >= call._numbers.size()
+                && _numbers.subList(0, call._numbers.size()).equals(call._numbers);
+    }
+
+    /**
+     * Compare the numbers level by level, a call coming before the calls it makes.
+     */
+    @Override
+    public int compareTo(Numbering other) {
+        int levels = Math.min(_numbers.size(), other._numbers.size());
+        for (int i = 0; i < levels; ++i) {
+            int compare = Integer.compare(_numbers.get(i), other._numbers.get(i));
+            if (compare != 0)
+                return compare;
+        }
+        return Integer.compare(_numbers.size(), other._numbers.size());
+    }
+
     public boolean equals(Object o) {
         if(this == o) return true;
         if(!(o instanceof Numbering)) return false;
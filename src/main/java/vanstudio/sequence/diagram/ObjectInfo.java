@@ -12,7 +12,7 @@ public class ObjectInfo extends Info {
 
     private final String _name;
     private final String _fullName;
-    private final int _seq;
+    private int _seq;
     private final List<MethodInfo> _methods = new ArrayList<>();
 
     public ObjectInfo(String name, List<String> attributes, int seq) {
@@ -60,6 +60,10 @@ public class ObjectInfo extends Info {
         return _seq;
     }
 
+    void setSeq(int seq) {
+        _seq = seq;
+    }
+
     public String toString() {
         return "Object " + _name + " seq " + _seq;
     }
@@ -0,0 +1,252 @@
+package vanstudio.sequence.diagram;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Bird's-eye view of a <code>Display</code>. The whole diagram is rendered on a pooled thread
+ * into a small base image, which is halved repeatedly into a pyramid so that views of any size
+ * draw from a level close to their own size. When the text would be too small to read the
+ * diagram is drawn as lines and boxes only.
+ * <p>
+ * Folding only moves the rows below the fold, so only that band of each level is rendered again.
+ * Nothing is rendered while no view listens. Everything but the rendering happens on the EDT.
+ */
+public class Overview {
+    private static final Logger LOGGER = Logger.getInstance(Overview.class);
+
+    private static final int BASE_WIDTH = 384;
+    private static final int BASE_HEIGHT = 4096;
+    private static final int MIN_LEVEL_SIZE = 32;
+    private static final Executor EXECUTOR =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Sequence Diagram Overview", 1);
+
+    private final Display _display;
+    private final List<Runnable> _listeners = new CopyOnWriteArrayList<>();
+    private Pyramid _pyramid;
+    private int _version;
+    private boolean _stale = true;
+    private boolean _fullPending;
+
+    Overview(Display display) {
+        _display = display;
+    }
+
+    /**
+     * @param listener called on the EDT when a new rendering is ready
+     */
+    public void addChangeListener(Runnable listener) {
+        _listeners.add(listener);
+        if (_stale)
+            invalidate();
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Render everything again, after the diagram was laid out.
+     */
+    void invalidate() {
+        ++_version;
+        if (_listeners.isEmpty()) {
+            _stale = true;
+            return;
+        }
+        _stale = false;
+        _fullPending = true;
+        Dimension size = _display.getDiagramSize();
+        double scale = Math.min(1., Math.min((double) BASE_WIDTH / size.width, (double) BASE_HEIGHT / size.height));
+        schedule(size, () -> Pyramid.render(this, size, scale));
+    }
+
+    /**
+     * Render again what lies below y, after the rows below y moved.
+     *
+     * @param y in the coordinates of the full size, header included
+     */
+    void invalidateFrom(int y) {
+        Pyramid pyramid = _pyramid;
+        Dimension size = _display.getDiagramSize();
+        if (_stale || _fullPending || pyramid == null || !pyramid.fits(size)) {
+            invalidate();
+            return;
+        }
+        ++_version;
+        schedule(size, () -> pyramid.update(this, size, y));
+    }
+
+    void dispose() {
+        ++_version;
+        _pyramid = null;
+        _stale = true;
+    }
+
+    private void schedule(Dimension size, Supplier<Pyramid> renderer) {
+        int version = _version;
+        EXECUTOR.execute(() -> {
+            Pyramid rendered = null;
+            try {
+                rendered = renderer.get();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to render the overview of " + size, e);
+            }
+            Pyramid result = rendered;
+            SwingUtilities.invokeLater(() -> {
+                if (version != _version)
+                    return;
+                _fullPending = false;
+                if (result == null)
+                    return;
+                _pyramid = result;
+                for (Runnable listener : _listeners) {
+                    listener.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * Draw the whole diagram into the rectangle, from the smallest level not smaller than it.
+     *
+     * @return false if nothing has been rendered yet
+     */
+    public boolean paint(Graphics2D g2, int x, int y, int width, int height) {
+        Pyramid pyramid = _pyramid;
+        if (pyramid == null)
+            return false;
+        int level = pyramid.levelFor(width, height);
+        BufferedImage image = pyramid.levels[level];
+        Graphics2D g = (Graphics2D) g2.create();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, x, y, x + width, y + height,
+                    0, 0, pyramid.contentWidth(level), pyramid.contentHeight(level), null);
+        } finally {
+            g.dispose();
+        }
+        return true;
+    }
+
+    private void renderBand(BufferedImage image, double scale, int fromY, int contentHeight) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(_display.getBackground());
+            g.fillRect(0, fromY, image.getWidth(), image.getHeight() - fromY);
+            if (fromY >= contentHeight)
+                return;
+            g.setClip(0, fromY, image.getWidth(), contentHeight - fromY);
+            g.scale(scale, scale);
+            _display.paintOverview(g, _display.isLowDetail(scale));
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * The base image and its halvings. Never changed once published; an update copies the levels.
+     */
+    private static final class Pyramid {
+        final double scale;
+        final BufferedImage[] levels;
+        final int width;
+        final int height;
+
+        private Pyramid(double scale, BufferedImage[] levels, int width, int height) {
+            this.scale = scale;
+            this.levels = levels;
+            this.width = width;
+            this.height = height;
+        }
+
+        static Pyramid render(Overview overview, Dimension size, double scale) {
+            int width = Math.max(1, (int) Math.ceil(size.width * scale));
+            int height = Math.max(1, (int) Math.ceil(size.height * scale));
+            BufferedImage base = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            overview.renderBand(base, scale, 0, height);
+
+            List<BufferedImage> levels = new ArrayList<>();
+            levels.add(base);
+            BufferedImage level = base;
+            while (level.getWidth() > MIN_LEVEL_SIZE && level.getHeight() > MIN_LEVEL_SIZE) {
+                BufferedImage half = new BufferedImage((level.getWidth() + 1) / 2, (level.getHeight() + 1) / 2,
+                        BufferedImage.TYPE_INT_RGB);
+                halve(level, half, 0);
+                levels.add(half);
+                level = half;
+            }
+            return new Pyramid(scale, levels.toArray(new BufferedImage[0]), width, height);
+        }
+
+        /**
+         * @return true if the diagram of this size can be drawn into the base image at the same scale
+         */
+        boolean fits(Dimension size) {
+            return Math.ceil(size.width * scale) <= levels[0].getWidth()
+                    && Math.ceil(size.height * scale) <= levels[0].getHeight();
+        }
+
+        Pyramid update(Overview overview, Dimension size, int y) {
+            int width = Math.max(1, (int) Math.ceil(size.width * scale));
+            int height = Math.max(1, (int) Math.ceil(size.height * scale));
+            BufferedImage[] copy = new BufferedImage[levels.length];
+            int fromY = Math.max(0, (int) Math.floor(y * scale) - 1);
+            copy[0] = copyOf(levels[0]);
+            overview.renderBand(copy[0], scale, fromY, height);
+            for (int i = 1; i < levels.length; ++i) {
+                copy[i] = copyOf(levels[i]);
+                fromY /= 2;
+                halve(copy[i - 1], copy[i], fromY);
+            }
+            return new Pyramid(scale, copy, width, height);
+        }
+
+        int contentWidth(int level) {
+            return Math.max(1, width >> level);
+        }
+
+        int contentHeight(int level) {
+            return Math.max(1, height >> level);
+        }
+
+        int levelFor(int width, int height) {
+            int level = 0;
+            while (level + 1 < levels.length
+                    && contentWidth(level + 1) >= width && contentHeight(level + 1) >= height)
+                ++level;
+            return level;
+        }
+
+        /**
+         * Scale the rows of <code>source</code> from <code>2 * fromY</code> down into <code>target</code> from <code>fromY</code>.
+         */
+        private static void halve(BufferedImage source, BufferedImage target, int fromY) {
+            if (fromY >= target.getHeight())
+                return;
+            Graphics2D g = target.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(source, 0, fromY, target.getWidth(), target.getHeight(),
+                        0, 2 * fromY, 2 * target.getWidth(), 2 * target.getHeight(), null);
+            } finally {
+                g.dispose();
+            }
+        }
+
+        private static BufferedImage copyOf(BufferedImage image) {
+            BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+            copy.setData(image.getRaster());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package vanstudio.sequence.diagram;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.*;
+
+/**
+ * Reorders the lifelines so that the arrows between them are short. The cost of an order is the
+ * sum over all calls of the distance between caller and callee; the actor stays first.
+ * <p>
+ * Finding the best order is NP-hard, so this runs a few barycenter passes followed by moving
+ * single lifelines to better places, and stops with the best order so far when the time limit is reached.
+ */
+class ParticipantOrderOptimizer {
+    private static final Logger LOGGER = Logger.getInstance(ParticipantOrderOptimizer.class);
+
+    private static final int MAX_BARYCENTER_PASSES = 8;
+
+    private final int _count;
+    private final int[][] _neighbours;
+    private final int[][] _weights;
+    private final long _deadline;
+
+    private ParticipantOrderOptimizer(int count, List<Link> links, long deadline) {
+        _count = count;
+        _deadline = deadline;
+
+        List<Map<Integer, Integer>> weights = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            weights.add(new HashMap<>());
+        }
+        for (Link link : links) {
+            if (!(link instanceof Call))
+                continue;
+            int from = link.getFrom().getSeq();
+            int to = link.getTo().getSeq();
+            if (from == to)
+                continue;
+            weights.get(from).merge(to, 1, Integer::sum);
+            weights.get(to).merge(from, 1, Integer::sum);
+        }
+        _neighbours = new int[count][];
+        _weights = new int[count][];
+        for (int i = 0; i < count; ++i) {
+            Map<Integer, Integer> map = weights.get(i);
+            _neighbours[i] = new int[map.size()];
+            _weights[i] = new int[map.size()];
+            int n = 0;
+            for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                _neighbours[i][n] = entry.getKey();
+                _weights[i][n] = entry.getValue();
+                ++n;
+            }
+        }
+    }
+
+    /**
+     * Reorder the objects in place and renumber their seq to match.
+     *
+     * @param objects   the objects, indexed by seq, with the actor first
+     * @param links     the links between the objects
+     * @param timeLimit time limit in milliseconds
+     */
+    static void optimize(List<ObjectInfo> objects, List<Link> links, long timeLimit) {
+        if (objects.size() < 3)
+            return;
+        long deadline = System.nanoTime() + timeLimit * 1_000_000L;
+        ParticipantOrderOptimizer optimizer = new ParticipantOrderOptimizer(objects.size(), links, deadline);
+        int[] position = optimizer.run();
+
+        List<ObjectInfo> ordered = new ArrayList<>(objects);
+        for (ObjectInfo objectInfo : objects) {
+            int seq = position[objectInfo.getSeq()];
+            ordered.set(seq, objectInfo);
+        }
+        for (int i = 0; i < ordered.size(); ++i) {
+            ordered.get(i).setSeq(i);
+        }
+        objects.clear();
+        objects.addAll(ordered);
+    }
+
+    /**
+     * @return the new position of each object
+     */
+    private int[] run() {
+        int[] position = new int[_count];
+        for (int i = 0; i < _count; ++i) {
+            position[i] = i;
+        }
+        long initialCost = cost(position);
+
+        // the order of first appearance is often close already, so improve on it as well as
+        // on the barycenter order and keep the better of the two
+        int[] barycenter = position.clone();
+        long barycenterCost = initialCost;
+        for (int pass = 0; pass < MAX_BARYCENTER_PASSES && !isExpired(); ++pass) {
+            int[] candidate = barycenterOrder(barycenter);
+            long candidateCost = cost(candidate);
+            if (candidateCost >= barycenterCost)
+                break;
+            barycenter = candidate;
+            barycenterCost = candidateCost;
+        }
+
+        long cost = initialCost + relocate(position);
+        barycenterCost += relocate(barycenter);
+        if (barycenterCost < cost) {
+            position = barycenter;
+            cost = barycenterCost;
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("participant order cost " + initialCost + " -> " + cost + (isExpired() ? " (time limit)" : ""));
+        return position;
+    }
+
+    private boolean isExpired() {
+        return System.nanoTime() - _deadline > 0;
+    }
+
+    private long cost(int[] position) {
+        long cost = 0;
+        for (int a = 0; a < _count; ++a) {
+            for (int n = 0; n < _neighbours[a].length; ++n) {
+                int b = _neighbours[a][n];
+                if (a < b)
+                    cost += (long) _weights[a][n] * Math.abs(position[a] - position[b]);
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Sort everything but the actor by the weighted mean position of its neighbours.
+     */
+    private int[] barycenterOrder(int[] position) {
+        Integer[] objects = new Integer[_count - 1];
+        double[] barycenter = new double[_count];
+        for (int a = 1; a < _count; ++a) {
+            objects[a - 1] = a;
+            long sum = 0, total = 0;
+            for (int n = 0; n < _neighbours[a].length; ++n) {
+                sum += (long) _weights[a][n] * position[_neighbours[a][n]];
+                total += _weights[a][n];
+            }
+            barycenter[a] = total == 0 ? position[a] : (double) sum / total;
+        }
+        Arrays.sort(objects, Comparator.<Integer>comparingDouble(a -> barycenter[a])
+                .thenComparingInt(a -> position[a]));
+
+        int[] result = new int[_count];
+        for (int i = 0; i < objects.length; ++i) {
+            result[objects[i]] = i + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Slide each lifeline left and right over its neighbours and leave it where the arrows are
+     * shortest, until nothing moves or the time is up.
+     *
+     * @return the change in cost
+     */
+    private long relocate(int[] position) {
+        int[] atPosition = new int[_count];
+        for (int a = 0; a < _count; ++a) {
+            atPosition[position[a]] = a;
+        }
+        long change = 0;
+        boolean improved = true;
+        while (improved && !isExpired()) {
+            improved = false;
+            for (int a = 1; a < _count && !isExpired(); ++a) {
+                for (int step = -1; step <= 1; step += 2) {
+                    long delta = slide(position, atPosition, a, step);
+                    if (delta < 0) {
+                        change += delta;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return change;
+    }
+
+    /**
+     * Move <code>a</code> one place at a time in the direction of <code>step</code> as far as it
+     * goes, then back to the best place seen.
+     *
+     * @return the change in cost
+     */
+    private long slide(int[] position, int[] atPosition, int a, int step) {
+        int start = position[a];
+        long delta = 0, bestDelta = 0;
+        int best = start;
+        for (int i = start; i + step >= 1 && i + step < _count; i += step) {
+            delta += swap(position, atPosition, i, i + step);
+            if (delta < bestDelta) {
+                bestDelta = delta;
+                best = i + step;
+            }
+        }
+        for (int i = position[a]; i != best; i -= step) {
+            swap(position, atPosition, i, i - step);
+        }
+        return bestDelta;
+    }
+
+    /**
+     * Swap the lifelines at two neighbouring positions.
+     *
+     * @return the change in cost
+     */
+    private long swap(int[] position, int[] atPosition, int i, int j) {
+        int a = atPosition[i];
+        int b = atPosition[j];
+        long delta = moveDelta(position, a, b, j - i) + moveDelta(position, b, a, i - j);
+        position[a] = j;
+        position[b] = i;
+        atPosition[i] = b;
+        atPosition[j] = a;
+        return delta;
+    }
+
+    /**
+     * @return the change in the length of the arrows of <code>a</code>, other than to <code>other</code>,
+     * when it moves by <code>step</code>
+     */
+    private long moveDelta(int[] position, int a, int other, int step) {
+        long delta = 0;
+        int from = position[a];
+        for (int n = 0; n < _neighbours[a].length; ++n) {
+            int b = _neighbours[a][n];
+            if (b == other)
+                continue;
+            delta += (long) _weights[a][n] * (Math.abs(from + step - position[b]) - Math.abs(from - position[b]));
+        }
+        return delta;
+    }
+}
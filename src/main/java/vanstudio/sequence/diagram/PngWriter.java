@@ -0,0 +1,202 @@
+package vanstudio.sequence.diagram;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG file one row at a time, so that the image never has to be held in memory and
+ * its size is not bound by the limits of <code>Raster</code>. Rows are given as ARGB (or RGB) ints
+ * and each row gets the PNG filter which makes it smallest, as most encoders do.
+ */
+class PngWriter implements Closeable {
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int IDAT_SIZE = 64 * 1024;
+    /** 300 dpi, as the svg transcoder wrote before */
+    private static final int PIXELS_PER_METER = 11811;
+
+    private final DataOutputStream _out;
+    private final int _width;
+    private final int _height;
+    private final int _bytesPerPixel;
+    private final DeflaterOutputStream _deflater;
+    private final Deflater _deflaterImpl = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private byte[] _previous;
+    private byte[] _current;
+    private final byte[][] _filtered = new byte[5][];
+    private int _rows;
+
+    /**
+     * @param alpha write the alpha channel, otherwise the rows are taken as opaque RGB
+     */
+    PngWriter(OutputStream out, int width, int height, boolean alpha) throws IOException {
+        _out = new DataOutputStream(out);
+        _width = width;
+        _height = height;
+        _bytesPerPixel = alpha ? 4 : 3;
+        int rowLength = width * _bytesPerPixel;
+        _previous = new byte[rowLength];
+        _current = new byte[rowLength];
+        for (int i = 0; i < _filtered.length; ++i) {
+            _filtered[i] = new byte[rowLength + 1];
+            _filtered[i][0] = (byte) i;
+        }
+
+        _out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = (byte) (alpha ? 6 : 2); // truecolour with or without alpha
+        writeChunk("IHDR", header, header.length);
+        byte[] physical = new byte[9];
+        putInt(physical, 0, PIXELS_PER_METER);
+        putInt(physical, 4, PIXELS_PER_METER);
+        physical[8] = 1; // metre
+        writeChunk("pHYs", physical, physical.length);
+        _deflater = new DeflaterOutputStream(new IdatOutputStream(), _deflaterImpl, IDAT_SIZE);
+    }
+
+    /**
+     * Write the next row.
+     *
+     * @param pixels ARGB pixels
+     * @param offset index of the first pixel of the row
+     */
+    void writeRow(int[] pixels, int offset) throws IOException {
+        if (_rows == _height)
+            throw new IOException("All " + _height + " rows have been written");
+        byte[] row = _current;
+        for (int x = 0, i = 0; x < _width; ++x) {
+            int pixel = pixels[offset + x];
+            row[i++] = (byte) (pixel >> 16);
+            row[i++] = (byte) (pixel >> 8);
+            row[i++] = (byte) pixel;
+            if (_bytesPerPixel == 4)
+                row[i++] = (byte) (pixel >>> 24);
+        }
+        _deflater.write(filter(row, _previous));
+        _current = _previous;
+        _previous = row;
+        ++_rows;
+    }
+
+    /**
+     * @return the row with the filter whose output has the smallest sum of absolute values
+     */
+    private byte[] filter(byte[] row, byte[] previous) {
+        int bpp = _bytesPerPixel;
+        long[] sums = new long[5];
+        for (int i = 0; i < row.length; ++i) {
+            int value = row[i] & 0xff;
+            int left = i >= bpp ? row[i - bpp] & 0xff : 0;
+            int up = previous[i] & 0xff;
+            int upLeft = i >= bpp ? previous[i - bpp] & 0xff : 0;
+            store(0, i, value, sums);
+            store(1, i, value - left, sums);
+            store(2, i, value - up, sums);
+            store(3, i, value - ((left + up) >> 1), sums);
+            store(4, i, value - paeth(left, up, upLeft), sums);
+        }
+        int best = 0;
+        for (int type = 1; type < sums.length; ++type) {
+            if (sums[type] < sums[best])
+                best = type;
+        }
+        return _filtered[best];
+    }
+
+    private void store(int type, int i, int value, long[] sums) {
+        byte b = (byte) value;
+        _filtered[type][i + 1] = b;
+        sums[type] += Math.abs((int) b);
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc)
+            return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Finish the image. Missing rows are an error, the file would not be readable.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            _deflater.close();
+            writeChunk("IEND", new byte[0], 0);
+            _out.flush();
+            if (_rows != _height)
+                throw new IOException("Only " + _rows + " of " + _height + " rows were written");
+        } finally {
+            _deflaterImpl.end();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        _out.writeInt(length);
+        _out.write(typeBytes);
+        _out.write(data, 0, length);
+        _out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Collects the compressed data into IDAT chunks.
+     */
+    private class IdatOutputStream extends OutputStream {
+        private final byte[] _buffer = new byte[IDAT_SIZE];
+        private int _count;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, _buffer.length - _count);
+                System.arraycopy(b, off, _buffer, _count, n);
+                _count += n;
+                off += n;
+                len -= n;
+                if (_count == _buffer.length)
+                    flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_count > 0) {
+                writeChunk("IDAT", _buffer, _count);
+                _count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -1,22 +1,25 @@
 package vanstudio.sequence.diagram;
 
-import com.intellij.ui.JBColor;
-import com.intellij.util.ui.ImageUtil;
-
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
-import java.awt.geom.AffineTransform;
-import java.awt.image.BufferedImage;
 
+/**
+ * Shows the whole diagram with the visible part framed, and scrolls to where it is clicked.
+ * The picture comes from the <code>Overview</code> of the display and follows its changes.
+ * It listens to the overview only while it is added to a window, so add and remove the panel
+ * rather than hiding it, or the overview keeps rendering for nothing.
+ */
 public class PreviewPanel extends JPanel {
     private final JScrollPane _scrollPane;
     private final Display _display;
-    private BufferedImage _image;
-    private double _xScale;
-    private double _yScale;
+    private final Runnable _overviewListener = this::repaint;
+    private final ChangeListener _viewportListener = e -> repaint();
+    private double _xScale = 1.;
+    private double _yScale = 1.;
 
     public PreviewPanel(JScrollPane scrollPane, Display display) {
         super(false);
@@ -41,7 +44,19 @@ public class PreviewPanel extends JPanel {
         });
     }
 
-    private void updateImage() {
+    public void addNotify() {
+        super.addNotify();
+        _display.getOverview().addChangeListener(_overviewListener);
+        _scrollPane.getViewport().addChangeListener(_viewportListener);
+    }
+
+    public void removeNotify() {
+        _display.getOverview().removeChangeListener(_overviewListener);
+        _scrollPane.getViewport().removeChangeListener(_viewportListener);
+        super.removeNotify();
+    }
+
+    private void updateScale() {
         Dimension displaySize = _display.getFullSize();
         _xScale = (double)getWidth()/displaySize.width;
         _yScale = (double)getHeight()/displaySize.height;
@@ -49,15 +64,6 @@ public class PreviewPanel extends JPanel {
             _xScale = 1.;
         if(_yScale > 1.)
             _yScale = 1.;
-//        _xScale = _yScale = Math.min(_xScale, _yScale);
-        _image = ImageUtil.createImage(getWidth(), getHeight(), BufferedImage.TYPE_USHORT_555_RGB);
-        Graphics2D g2 = _image.createGraphics();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(JBColor.WHITE);
-        g2.fillRect(0, 0, getWidth(), getHeight());
-        AffineTransform at = AffineTransform.getScaleInstance(_xScale, _yScale);
-        g2.setTransform(at);
-        _display.paintComponentWithHeader(g2);
     }
 
     private void moveViewport(MouseEvent e) {
@@ -88,10 +94,11 @@ public class PreviewPanel extends JPanel {
 
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if(_image == null)
-            updateImage();
+        updateScale();
         Graphics2D g2 = (Graphics2D)g;
-        g2.drawImage(_image, 0, 0, this);
+        Dimension displaySize = _display.getFullSize();
+        _display.getOverview().paint(g2, 0, 0,
+              (int)Math.round(displaySize.width * _xScale), (int)Math.round(displaySize.height * _yScale));
         Rectangle viewRect = _scrollPane.getViewport().getViewRect();
         int x = (int)Math.round(viewRect.x * _xScale) + 2;
         int y = (int)Math.round(viewRect.y * _yScale) + 2;
@@ -0,0 +1,93 @@
+package vanstudio.sequence.diagram;
+
+import com.intellij.ui.JBColor;
+import vanstudio.sequence.config.ColorSupport;
+import vanstudio.sequence.config.SequenceSettingsState;
+
+import java.awt.*;
+
+/**
+ * Fonts, colours and rendering hints resolved once from the settings when the diagram is laid
+ * out, so that painting neither allocates nor looks up the settings. A new style is resolved
+ * when the settings change.
+ */
+final class RenderStyle {
+    /**
+     * Rendering hint of the graphics of an export, which is painted in the colours of a light
+     * theme whatever the theme of the IDE.
+     */
+    static final RenderingHints.Key KEY_EXPORT = new RenderingHints.Key(0) {
+        @Override
+        public boolean isCompatibleValue(Object value) {
+            return value instanceof Boolean;
+        }
+    };
+    private static final Paint FOREGROUND = JBColor.foreground();
+    private static final Paint EXPORT_FOREGROUND = Color.BLACK;
+
+    final Font font;
+    final Font italicFont;
+    /** null when antialiasing is off */
+    private final RenderingHints _hints;
+    final boolean use3dView;
+    final boolean showReturnArrows;
+    final Paint classColor;
+    final Paint interfaceColor;
+    final Paint externalClassColor;
+    final Paint methodBarColor;
+    final Paint selectedMethodBarColor;
+    private final SequenceSettingsState _settings;
+
+    private RenderStyle(SequenceSettingsState settings) {
+        _settings = settings;
+        font = new Font(settings.FONT_NAME, Font.PLAIN, settings.FONT_SIZE);
+        italicFont = font.deriveFont(Font.ITALIC);
+        _hints = settings.USE_ANTIALIASING
+                ? new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON)
+                : null;
+        use3dView = settings.USE_3D_VIEW;
+        showReturnArrows = settings.SHOW_RETURN_ARROWS;
+        classColor = settings.CLASS_COLOR;
+        interfaceColor = settings.INTERFACE_COLOR;
+        externalClassColor = settings.EXTERNAL_CLASS_COLOR;
+        methodBarColor = settings.METHOD_BAR_COLOR;
+        selectedMethodBarColor = settings.SELECTED_METHOD_BAR_COLOR;
+    }
+
+    static RenderStyle fromSettings() {
+        return new RenderStyle(SequenceSettingsState.getInstance());
+    }
+
+    /**
+     * Set the font and rendering hints on the graphics.
+     */
+    void apply(Graphics2D g2) {
+        g2.setFont(font);
+        if (_hints != null)
+            g2.addRenderingHints(_hints);
+    }
+
+    /**
+     * @return the colour of lines and text: the one of the theme, or black for an export
+     */
+    static Paint foreground(Graphics2D g2) {
+        return Boolean.TRUE.equals(g2.getRenderingHint(KEY_EXPORT)) ? EXPORT_FOREGROUND : FOREGROUND;
+    }
+
+    Paint getHeaderColor(ObjectInfo objectInfo) {
+        return objectInfo.hasAttribute(Info.EXTERNAL_ATTRIBUTE)
+                ? externalClassColor
+                : objectInfo.hasAttribute(Info.INTERFACE_ATTRIBUTE)
+                    ? interfaceColor
+                    : classColor;
+    }
+
+    /**
+     * @return the translucent colour of the user's colour mapping for the object, or null if none matches
+     */
+    Paint getOverlayColor(ObjectInfo objectInfo) {
+        return ColorSupport.lookupMappedColorFor(_settings, objectInfo.getFullName())
+                .map(paint -> (Paint) ColorSupport.withTransparency((Color) paint, 0.8f))
+                .orElse(null);
+    }
+}
@@ -0,0 +1,97 @@
+package vanstudio.sequence.diagram;
+
+/**
+ * Vertical positions of the diagram rows (one row per <code>DisplayLink</code>), kept as a
+ * Fenwick tree over the row heights. Looking up the y of a row, the row at a y and changing
+ * the height of a row are all O(log n).
+ */
+class RowIndex {
+    private final int _origin;
+    private final int[] _heights;
+    private final int[] _tree;
+
+    RowIndex() {
+        this(0, new int[0]);
+    }
+
+    /**
+     * @param origin  y of the first row
+     * @param heights height of each row, 0 for rows which take no room
+     */
+    RowIndex(int origin, int[] heights) {
+        _origin = origin;
+        _heights = heights.clone();
+        _tree = new int[heights.length + 1];
+        for (int i = 1; i < _tree.length; ++i) {
+            _tree[i] += heights[i - 1];
+            int parent = i + (i & -i);
+            if (parent < _tree.length)
+                _tree[parent] += _tree[i];
+        }
+    }
+
+    /**
+     * Copy the index, to change heights without touching an index which may be in use.
+     */
+    RowIndex(RowIndex other) {
+        _origin = other._origin;
+        _heights = other._heights.clone();
+        _tree = other._tree.clone();
+    }
+
+    int size() {
+        return _heights.length;
+    }
+
+    int getHeight(int row) {
+        return _heights[row];
+    }
+
+    void setHeight(int row, int height) {
+        int delta = height - _heights[row];
+        if (delta == 0)
+            return;
+        _heights[row] = height;
+        for (int i = row + 1; i < _tree.length; i += i & -i) {
+            _tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return y of the top of the row
+     */
+    int getY(int row) {
+        int sum = _origin;
+        for (int i = row; i > 0; i -= i & -i) {
+            sum += _tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return y below the last row
+     */
+    int getBottom() {
+        return getY(_heights.length);
+    }
+
+    /**
+     * @return the last row starting at or above y, clamped to the valid rows; -1 if there are no rows
+     */
+    int rowAt(int y) {
+        if (_heights.length == 0)
+            return -1;
+        int remaining = y - _origin;
+        if (remaining < 0)
+            return 0;
+        int pos = 0;
+        for (int step = Integer.highestOneBit(_heights.length); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= _heights.length && _tree[next] <= remaining) {
+                pos = next;
+                remaining -= _tree[next];
+            }
+        }
+        return Math.min(pos, _heights.length - 1);
+    }
+}
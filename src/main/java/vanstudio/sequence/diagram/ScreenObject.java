@@ -4,7 +4,8 @@ import java.awt.*;
 
 public abstract class ScreenObject {
 
-    private boolean _selected;
+    /** the only state changed on a shape once it is published, see <code>Diagram</code> */
+    private volatile boolean _selected;
 
     public abstract String getToolTip();
 
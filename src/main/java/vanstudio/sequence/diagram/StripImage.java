@@ -0,0 +1,189 @@
+package vanstudio.sequence.diagram;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/**
+ * An image of the whole diagram which is painted one horizontal strip at a time, when an image
+ * writer asks for it. Writers that pull the image by rows or strips, as the PNG and TIFF writers
+ * do, never hold more than one strip, so exporting a big diagram needs little memory and no
+ * intermediate file.
+ * <p>
+ * The last strip is kept, since writers ask for the same strip many times, one row at a time.
+ */
+class StripImage implements RenderedImage {
+    static final int STRIP_HEIGHT = 256;
+
+    private final int _width;
+    private final int _height;
+    private final int _type;
+    private final Color _background;
+    private final Consumer<Graphics2D> _painter;
+    private final ColorModel _colorModel;
+    private final SampleModel _sampleModel;
+
+    private int _stripIndex = -1;
+    private BufferedImage _strip;
+
+    /**
+     * @param type       a <code>BufferedImage</code> type such as <code>TYPE_INT_RGB</code>
+     * @param background colour to clear each strip with, null to leave it transparent
+     * @param painter    paints the diagram at 100%, honouring the clip
+     */
+    StripImage(int width, int height, int type, Color background, Consumer<Graphics2D> painter) {
+        _width = Math.max(1, width);
+        _height = Math.max(1, height);
+        _type = type;
+        _background = background;
+        _painter = painter;
+        BufferedImage sample = new BufferedImage(1, 1, type);
+        _colorModel = sample.getColorModel();
+        _sampleModel = sample.getSampleModel().createCompatibleSampleModel(_width, STRIP_HEIGHT);
+    }
+
+    /**
+     * @return the painted strip, valid until another strip is asked for
+     */
+    BufferedImage getStrip(int index) {
+        if (index != _stripIndex) {
+            int y = index * STRIP_HEIGHT;
+            // the last strip may reach below the image, which writers ignore
+            if (_strip == null)
+                _strip = new BufferedImage(_width, STRIP_HEIGHT, _type);
+            Graphics2D g = _strip.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Src);
+                g.setColor(_background != null ? _background : new Color(0, true));
+                g.fillRect(0, 0, _width, STRIP_HEIGHT);
+                g.setComposite(AlphaComposite.SrcOver);
+                g.translate(0, -y);
+                g.clipRect(0, y, _width, STRIP_HEIGHT);
+                _painter.accept(g);
+            } finally {
+                g.dispose();
+            }
+            _stripIndex = index;
+        }
+        return _strip;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        return getStrip(tileY).getRaster().createTranslatedChild(0, tileY * STRIP_HEIGHT);
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, _width, _height));
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        return copyData(_colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+                .createWritableTranslatedChild(rect.x, rect.y));
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null)
+            raster = _colorModel.createCompatibleWritableRaster(_width, _height);
+        Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, _width, _height));
+        if (bounds.isEmpty())
+            return raster;
+        int first = bounds.y / STRIP_HEIGHT;
+        int last = (bounds.y + bounds.height - 1) / STRIP_HEIGHT;
+        for (int index = first; index <= last; ++index) {
+            Raster tile = getTile(0, index);
+            Rectangle area = tile.getBounds().intersection(bounds);
+            raster.setRect(tile.createChild(area.x, area.y, area.width, area.height, area.x, area.y, null));
+        }
+        return raster;
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return _colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return _sampleModel;
+    }
+
+    @Override
+    public int getWidth() {
+        return _width;
+    }
+
+    @Override
+    public int getHeight() {
+        return _height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (_height + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return _width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return STRIP_HEIGHT;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
@@ -0,0 +1,184 @@
+package vanstudio.sequence.diagram;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a laid-out diagram as svg, element by element, to a writer. The look of the shapes is
+ * given once by the classes of a style sheet, and the arrow heads and fold markers are defined
+ * once and reused, so each shape takes a single short element.
+ * <p>
+ * The shapes write themselves, see <code>writeSvg</code> of the display classes, in the order they
+ * are painted. The selection is not exported.
+ */
+final class SvgWriter {
+    static final String LIFELINE = "l";
+    static final String CALL = "c";
+    static final String INTERFACE_CALL = "i";
+    static final String RETURN = "r";
+    static final String BAR = "b";
+    static final String SHADOW = "s";
+    static final String HEADER_TEXT = "h";
+    static final String ITALIC = "it";
+    static final String STATIC = "st";
+
+    private static final String CLASS_HEADER = "hc";
+    private static final String INTERFACE_HEADER = "hi";
+    private static final String EXTERNAL_HEADER = "he";
+
+    private final Writer _out;
+
+    SvgWriter(Writer out) {
+        _out = out;
+    }
+
+    /**
+     * Write the root element, the style sheet and the shared shapes.
+     */
+    void start(int width, int height, RenderStyle style) throws IOException {
+        _out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        _out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"");
+        _out.write(" width=\"" + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + ' ' + height + "\">\n");
+
+        Font font = style.font;
+        _out.write("<style>\n");
+        _out.write("line,path,rect{stroke:#000;stroke-linecap:square;fill:none}\n");
+        _out.write("text{font-family:'" + font.getFamily().replace("'", "") + "',sans-serif;font-size:"
+                + font.getSize() + "px;fill:#000;white-space:pre}\n");
+        _out.write('.' + LIFELINE + "{stroke-dasharray:12 6}\n");
+        _out.write('.' + INTERFACE_CALL + "{stroke-dasharray:6 3}\n");
+        _out.write('.' + RETURN + "{stroke-dasharray:10 5}\n");
+        _out.write('.' + BAR + "{fill:" + color(style.methodBarColor) + "}\n");
+        _out.write('.' + SHADOW + "{fill:" + color(Color.LIGHT_GRAY) + ";stroke:none}\n");
+        _out.write('.' + CLASS_HEADER + "{fill:" + color(style.classColor) + "}\n");
+        _out.write('.' + INTERFACE_HEADER + "{fill:" + color(style.interfaceColor) + "}\n");
+        _out.write('.' + EXTERNAL_HEADER + "{fill:" + color(style.externalClassColor) + "}\n");
+        _out.write('.' + HEADER_TEXT + "{fill:" + color(Color.DARK_GRAY) + "}\n");
+        _out.write('.' + ITALIC + "{font-style:italic}\n");
+        _out.write('.' + STATIC + "{text-decoration:underline}\n");
+        _out.write("</style>\n");
+
+        // arrow heads with the tip at the origin, filled for calls and open for returns
+        _out.write("<defs>\n");
+        _out.write("<path id=\"a\" d=\"M-4-3L0 0-4 3z\" style=\"fill:#000\"/>\n");
+        _out.write("<path id=\"al\" d=\"M4-3L0 0 4 3z\" style=\"fill:#000\"/>\n");
+        _out.write("<path id=\"o\" d=\"M-4-3L0 0-4 3\"/>\n");
+        _out.write("<path id=\"ol\" d=\"M4-3L0 0 4 3\"/>\n");
+        _out.write("<path id=\"f\" d=\"M-2 0h4M0-2v4\"/>\n");
+        _out.write("</defs>\n");
+    }
+
+    void end() throws IOException {
+        _out.write("</svg>\n");
+    }
+
+    void startGroup(int dy) throws IOException {
+        _out.write("<g transform=\"translate(0," + dy + ")\">\n");
+    }
+
+    void endGroup() throws IOException {
+        _out.write("</g>\n");
+    }
+
+    /**
+     * @return the class of the fill of a header box, see {@link RenderStyle#getHeaderColor(ObjectInfo)}
+     */
+    static String headerClass(ObjectInfo objectInfo) {
+        return objectInfo.hasAttribute(Info.EXTERNAL_ATTRIBUTE)
+                ? EXTERNAL_HEADER
+                : objectInfo.hasAttribute(Info.INTERFACE_ATTRIBUTE)
+                    ? INTERFACE_HEADER
+                    : CLASS_HEADER;
+    }
+
+    void line(int x1, int y1, int x2, int y2, String cssClass) throws IOException {
+        _out.write("<line");
+        writeClass(cssClass);
+        _out.write(" x1=\"" + x1 + "\" y1=\"" + y1 + "\" x2=\"" + x2 + "\" y2=\"" + y2 + "\"/>\n");
+    }
+
+    /**
+     * A box with its border inside the given size, like <code>fillRect</code> then <code>drawRect</code>.
+     */
+    void box(int x, int y, int width, int height, String cssClass) throws IOException {
+        _out.write("<rect class=\"" + cssClass + "\" x=\"" + x + "\" y=\"" + y
+                + "\" width=\"" + (width - 1) + "\" height=\"" + (height - 1) + "\"/>\n");
+    }
+
+    void shadow(int x, int y, int width, int height) throws IOException {
+        _out.write("<rect class=\"" + SHADOW + "\" x=\"" + (x + 2) + "\" y=\"" + (y + 2)
+                + "\" width=\"" + width + "\" height=\"" + height + "\"/>\n");
+    }
+
+    /**
+     * A translucent square of the user's colour mapping.
+     */
+    void overlay(int x, int y, int size, Paint paint) throws IOException {
+        _out.write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + size + "\" height=\"" + size
+                + "\" style=\"stroke:none;fill:" + color(paint));
+        if (paint instanceof Color && ((Color) paint).getAlpha() < 255)
+            _out.write(";fill-opacity:" + Math.round(((Color) paint).getAlpha() / 2.55) / 100.);
+        _out.write("\"/>\n");
+    }
+
+    void arrow(int tipX, int y, boolean pointsLeft, boolean filled) throws IOException {
+        String id = (filled ? "a" : "o") + (pointsLeft ? "l" : "");
+        use(id, tipX, y);
+    }
+
+    void foldMarker(int centerX, int centerY) throws IOException {
+        use("f", centerX, centerY);
+    }
+
+    private void use(String id, int x, int y) throws IOException {
+        _out.write("<use xlink:href=\"#" + id + "\" x=\"" + x + "\" y=\"" + y + "\"/>\n");
+    }
+
+    /**
+     * @param cssClass classes separated by spaces, or null
+     */
+    void text(String text, int x, int y, String cssClass) throws IOException {
+        _out.write("<text");
+        writeClass(cssClass);
+        _out.write(" x=\"" + x + "\" y=\"" + y + "\">");
+        escape(_out, text);
+        _out.write("</text>\n");
+    }
+
+    private void writeClass(String cssClass) throws IOException {
+        if (cssClass != null && !cssClass.isEmpty())
+            _out.write(" class=\"" + cssClass + '"');
+    }
+
+    private static String color(Paint paint) {
+        Color color = paint instanceof Color ? (Color) paint : Color.BLACK;
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    /**
+     * Write the text as xml character data, leaving out the characters xml does not allow.
+     */
+    static void escape(Appendable out, String text) throws IOException {
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r')
+                        out.append(c);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package vanstudio.sequence.diagram;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 
 class TextBox {
@@ -11,7 +12,10 @@ class TextBox {
     private int _boxWidth = -1;
     private int _boxHeight = -1;
     private int _textOffset = -1;
-    private Rectangle2D _rect;
+    /** set after <code>_boxWidth</code>, so that a thread seeing it sees the width measured */
+    private volatile Rectangle2D _rect;
+    private Font _font;
+    private FontRenderContext _fontRenderContext;
 
     TextBox(String text) {
         _text = text;
@@ -22,6 +26,7 @@ class TextBox {
     }
 
     public int getWidth() {
+        measure();
         return _boxWidth;
     }
 
@@ -34,22 +39,47 @@ class TextBox {
     }
 
     public int getRealWidth() {
+        measure();
         return (int)_rect.getWidth();
     }
 
     public int getRealHeight() {
+        measure();
         return (int)_rect.getHeight();
     }
 
+    /**
+     * Cheap guess of the box width from the text length, without measuring the text.
+     * @param charWidth average width of a character
+     */
+    int estimateWidth(int charWidth) {
+        return _text.length() * charWidth + (_pad * 2);
+    }
+
+    /**
+     * Set up the height from the font metrics. The text itself is measured on first use of the width.
+     */
     void init(Graphics2D g2) {
         FontMetrics fm = g2.getFontMetrics();
         int height = fm.getMaxAscent() + fm.getMaxDescent();
 
-        _rect = fm.getStringBounds(_text, g2);
+        _font = g2.getFont();
+        _fontRenderContext = g2.getFontRenderContext();
+        _rect = null;
 
         _boxHeight = height + (_pad * 2);
-        _boxWidth = (int)_rect.getWidth() + (_pad * 2);
         _textOffset = fm.getMaxAscent() + _pad;
     }
+
+    /**
+     * Measure the text on first use. Painting threads may race to do it; they measure the same.
+     */
+    private void measure() {
+        if (_rect != null || _font == null)
+            return;
+        Rectangle2D rect = _font.getStringBounds(_text, _fontRenderContext);
+        _boxWidth = (int)rect.getWidth() + (_pad * 2);
+        _rect = rect;
+    }
 }
 
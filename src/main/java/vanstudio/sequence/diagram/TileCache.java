@@ -0,0 +1,252 @@
+package vanstudio.sequence.diagram;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the laid-out diagram as image tiles so that scrolling and small repaints draw images
+ * instead of shapes and text. Tiles are rendered on a pooled thread at the device scale of the
+ * screen; until a tile is ready its area is painted directly. A render is dropped when its tile
+ * is invalidated, and a queued render is cancelled when its tile scrolls out of view.
+ * <p>
+ * Everything but the rendering itself happens on the EDT.
+ */
+class TileCache {
+    private static final Logger LOGGER = Logger.getInstance(TileCache.class);
+
+    /** size of a tile on the screen, in device pixels */
+    private static final int TILE_SIZE = 512;
+    private static final int MIN_TILE_SIZE = 64;
+    private static final long MAX_PIXELS = 16L * 1024 * 1024;
+    private static final Executor EXECUTOR =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Sequence Diagram Tiles", 1);
+
+    private final JComponent _component;
+    private final Consumer<Graphics2D> _painter;
+    private final Consumer<Rectangle> _repainter;
+    private final Supplier<Rectangle> _visible;
+    private final Map<Long, BufferedImage> _tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Render> _pending = new HashMap<>();
+    private long _pixels;
+    private double _scale = 1;
+    /** size of a tile in the painter's coordinates, so that tiles keep their size on the screen when zoomed */
+    private int _tileSize = TILE_SIZE;
+
+    /**
+     * @param component the component the tiles are painted on, used for the background colour
+     * @param painter   paints the diagram in its own coordinates, honouring the clip
+     * @param repainter repaints an area given in the painter's coordinates
+     * @param visible   the area in view, in the painter's coordinates
+     */
+    TileCache(JComponent component, Consumer<Graphics2D> painter, Consumer<Rectangle> repainter,
+              Supplier<Rectangle> visible) {
+        _component = component;
+        _painter = painter;
+        _repainter = repainter;
+        _visible = visible;
+    }
+
+    void paint(Graphics2D g2) {
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, _component.getWidth(), _component.getHeight());
+        if (clip.isEmpty())
+            return;
+
+        AffineTransform transform = g2.getTransform();
+        double scale = Math.max(transform.getScaleX(), transform.getScaleY());
+        if (scale != _scale) {
+            invalidateAll();
+            _scale = scale;
+            _tileSize = Math.max(MIN_TILE_SIZE, (int) Math.round(TILE_SIZE / scale));
+        }
+
+        int tileSize = _tileSize;
+        cancelOutside(_visible.get());
+        int firstColumn = Math.max(0, clip.x / tileSize);
+        int firstRow = Math.max(0, clip.y / tileSize);
+        int lastColumn = (clip.x + clip.width - 1) / tileSize;
+        int lastRow = (clip.y + clip.height - 1) / tileSize;
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                int x = column * tileSize;
+                int y = row * tileSize;
+                BufferedImage tile = _tiles.get(key(column, row));
+                if (tile != null) {
+                    g2.drawImage(tile, x, y, tileSize, tileSize, null);
+                } else {
+                    Graphics2D g = (Graphics2D) g2.create();
+                    g.clipRect(x, y, tileSize, tileSize);
+                    _painter.accept(g);
+                    g.dispose();
+                    schedule(column, row, g2.getRenderingHints());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the tiles overlapping the area, e.g. around a shape whose selection changed.
+     */
+    void invalidate(Rectangle area) {
+        long left = area.x, top = area.y;
+        long right = left + area.width, bottom = top + area.height;
+        for (Iterator<Map.Entry<Long, BufferedImage>> it = _tiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, BufferedImage> entry = it.next();
+            long x = (long) column(entry.getKey()) * _tileSize;
+            long y = (long) row(entry.getKey()) * _tileSize;
+            if (x < right && left < x + _tileSize && y < bottom && top < y + _tileSize) {
+                _pixels -= pixels(entry.getValue());
+                it.remove();
+            }
+        }
+        // tiles being rendered may have seen the old state
+        for (Map.Entry<Long, Render> entry : _pending.entrySet()) {
+            long x = (long) column(entry.getKey()) * _tileSize;
+            long y = (long) row(entry.getKey()) * _tileSize;
+            if (x < right && left < x + _tileSize && y < bottom && top < y + _tileSize)
+                entry.getValue()._stale = true;
+        }
+    }
+
+    void invalidateAll() {
+        _tiles.clear();
+        _pixels = 0;
+        for (Render render : _pending.values())
+            render._cancelled = true;
+        _pending.clear();
+    }
+
+    /**
+     * Cancel the renders of the tiles out of view, which are rendered again if they come back.
+     */
+    private void cancelOutside(Rectangle visible) {
+        long left = visible.x, top = visible.y;
+        long right = left + visible.width, bottom = top + visible.height;
+        for (Iterator<Map.Entry<Long, Render>> it = _pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Render> entry = it.next();
+            long x = (long) column(entry.getKey()) * _tileSize;
+            long y = (long) row(entry.getKey()) * _tileSize;
+            if (!(x < right && left < x + _tileSize && y < bottom && top < y + _tileSize)) {
+                entry.getValue()._cancelled = true;
+                it.remove();
+            }
+        }
+    }
+
+    private void schedule(int column, int row, RenderingHints hints) {
+        long key = key(column, row);
+        Render pending = _pending.get(key);
+        if (pending != null && !pending._stale)
+            return;
+        if (pending != null)
+            pending._cancelled = true;
+        Render render = new Render(column, row, hints);
+        _pending.put(key, render);
+        EXECUTOR.execute(render);
+    }
+
+    /**
+     * The render of a tile, dropped if the tile is invalidated before it is stored.
+     */
+    private final class Render implements Runnable {
+        private final int _column;
+        private final int _row;
+        private final RenderingHints _hints;
+        private final double _scale = TileCache.this._scale;
+        private final int _tileSize = TileCache.this._tileSize;
+        private final Color _background = _component.getBackground();
+        /** set on the EDT when the area of the tile changed while it is rendered */
+        private boolean _stale;
+        private volatile boolean _cancelled;
+
+        Render(int column, int row, RenderingHints hints) {
+            _column = column;
+            _row = row;
+            _hints = hints;
+        }
+
+        @Override
+        public void run() {
+            if (_cancelled)
+                return;
+            BufferedImage tile = null;
+            try {
+                tile = render(_column, _row, _tileSize, _scale, _hints, _background);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to render tile " + _column + "," + _row, e);
+            }
+            BufferedImage rendered = tile;
+            SwingUtilities.invokeLater(() -> done(rendered));
+        }
+
+        private void done(BufferedImage rendered) {
+            long key = key(_column, _row);
+            if (_pending.get(key) != this)
+                return;
+            _pending.remove(key);
+            Rectangle area = new Rectangle(_column * _tileSize, _row * _tileSize, _tileSize, _tileSize);
+            if (rendered == null || _scale != TileCache.this._scale)
+                return;
+            if (!_stale)
+                store(key, rendered);
+            // a stale tile is rendered again if it is still in view
+            _repainter.accept(area);
+        }
+    }
+
+    private BufferedImage render(int column, int row, int tileSize, double scale, RenderingHints hints, Color background) {
+        int size = (int) Math.ceil(tileSize * scale);
+        BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        try {
+            g.setRenderingHints(hints);
+            g.setColor(background);
+            g.fillRect(0, 0, size, size);
+            g.scale(scale, scale);
+            g.translate(-column * tileSize, -row * tileSize);
+            g.setClip(column * tileSize, row * tileSize, tileSize, tileSize);
+            _painter.accept(g);
+        } finally {
+            g.dispose();
+        }
+        return tile;
+    }
+
+    private void store(long key, BufferedImage tile) {
+        BufferedImage old = _tiles.put(key, tile);
+        if (old != null)
+            _pixels -= pixels(old);
+        _pixels += pixels(tile);
+        Iterator<BufferedImage> eldest = _tiles.values().iterator();
+        while (_pixels > MAX_PIXELS && _tiles.size() > 1) {
+            _pixels -= pixels(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long pixels(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    private static long key(int column, int row) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int column(long key) {
+        return (int) key;
+    }
+
+    private static int row(long key) {
+        return (int) (key >>> 32);
+    }
+}
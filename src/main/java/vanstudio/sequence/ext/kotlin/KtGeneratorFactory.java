@@ -3,17 +3,17 @@ package vanstudio.sequence.ext.kotlin;
 import vanstudio.sequence.config.ExcludeEntry;
 import vanstudio.sequence.config.SequenceParamsState;
 import vanstudio.sequence.config.SequenceSettingsState;
+import vanstudio.sequence.ext.kotlin.filters.KtExcludeFilter;
 import vanstudio.sequence.ext.kotlin.filters.KtNoConstructorsFilter;
 import vanstudio.sequence.ext.kotlin.filters.KtNoGetterSetterFilter;
 import vanstudio.sequence.ext.kotlin.filters.KtNoPrivateMethodsFilter;
-import vanstudio.sequence.ext.kotlin.filters.KtSingleClassFilter;
 import vanstudio.sequence.openapi.GeneratorFactory;
 import vanstudio.sequence.openapi.IGenerator;
 import vanstudio.sequence.openapi.SequenceParams;
-import vanstudio.sequence.openapi.filters.PackageFilter;
 import vanstudio.sequence.openapi.filters.ProjectOnlyFilter;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class KtGeneratorFactory extends GeneratorFactory {
@@ -40,20 +40,12 @@ public class KtGeneratorFactory extends GeneratorFactory {
         params.getMethodFilter().addFilter(new KtNoPrivateMethodsFilter(state.noPrivateMethods));
         params.getMethodFilter().addFilter(new KtNoConstructorsFilter(state.noConstructors));
 
-        List<ExcludeEntry> excludeList = SequenceSettingsState.getInstance().getExcludeList();
-        for (ExcludeEntry excludeEntry : excludeList) {
-            if (!excludeEntry.isEnabled())
-                continue;
-            String excludeName = excludeEntry.getExcludeName();
-            if (excludeName.endsWith(SequenceParams.PACKAGE_INDICATOR)) {
-                int index = excludeName.lastIndexOf(SequenceParams.PACKAGE_INDICATOR);
-                params.getMethodFilter().addFilter(new PackageFilter(excludeName.substring(0, index)));
-            } else if (excludeName.endsWith(SequenceParams.RECURSIVE_PACKAGE_INDICATOR)) {
-                int index = excludeName.lastIndexOf(SequenceParams.RECURSIVE_PACKAGE_INDICATOR);
-                params.getMethodFilter().addFilter(new PackageFilter(excludeName.substring(0, index), true));
-            } else
-                params.getMethodFilter().addFilter(new KtSingleClassFilter(excludeName));
+        List<String> excludeNames = new ArrayList<>();
+        for (ExcludeEntry excludeEntry : SequenceSettingsState.getInstance().getExcludeList()) {
+            if (excludeEntry.isEnabled())
+                excludeNames.add(excludeEntry.getExcludeName());
         }
+        params.getMethodFilter().addFilter(new KtExcludeFilter(excludeNames));
 
     }
 }
@@ -87,7 +87,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
 
     private void generateLambda(KtLambdaExpression lambdaExpression) {
         MethodDescription method = createMethod(lambdaExpression);
-        makeMethodCallExceptCurrentStackIsRecursive(method);
+        makeMethodCallExceptCurrentStackIsRecursive(method, lambdaExpression);
         super.visitLambdaExpression(lambdaExpression);
     }
 
@@ -103,13 +103,13 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
 
     private void generateClass(KtClass psiElement, int textOffset) {
         final MethodDescription method = createMethod(psiElement, textOffset);
-        makeMethodCallExceptCurrentStackIsRecursive(method);
+        makeMethodCallExceptCurrentStackIsRecursive(method, psiElement);
     }
 
 
     private void generateClass(PsiClass psiElement, int textOffset) {
         final MethodDescription method = createMethod(psiElement, textOffset);
-        makeMethodCallExceptCurrentStackIsRecursive(method);
+        makeMethodCallExceptCurrentStackIsRecursive(method, psiElement);
     }
 
     private CallStack generate(KtFunction ktFunction) {
@@ -125,12 +125,12 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
         if (psiMethod.getLanguage().is(KotlinLanguage.INSTANCE)) {
             final int naviOffset = offsetStack.isEmpty() ? psiMethod.getTextOffset() : offsetStack.pop();
             MethodDescription method = createMethod(psiMethod, naviOffset);
-            makeMethodCallExceptCurrentStackIsRecursive(method);
+            makeMethodCallExceptCurrentStackIsRecursive(method, psiMethod);
         } else {
             final IGenerator sequenceGenerator =
                     offsetStack.isEmpty()
-                            ? GeneratorFactory.createGenerator(psiMethod.getLanguage(), params)
-                            : GeneratorFactory.createGenerator(psiMethod.getLanguage(), params, offsetStack.pop());
+                            ? GeneratorFactory.createGeneratorForLoadedParams(psiMethod.getLanguage(), params)
+                            : GeneratorFactory.createGeneratorForLoadedParams(psiMethod.getLanguage(), params, offsetStack.pop());
             CallStack javaCall = sequenceGenerator.generate(psiMethod, currentStack);
             LOGGER.debug("[JAVACall]:" + (javaCall == null ? "" : javaCall.toString()));
             if (topStack == null) {
@@ -148,7 +148,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
         }
         final int naviOffset = offsetStack.isEmpty() ? function.getTextOffset() : offsetStack.pop();
         MethodDescription method = createMethod(function, naviOffset);
-        if (makeMethodCallExceptCurrentStackIsRecursive(method)) return;
+        if (makeMethodCallExceptCurrentStackIsRecursive(method, function)) return;
         super.visitNamedFunction(function);
     }
 
@@ -176,7 +176,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
         }
         final int naviOffset = offsetStack.isEmpty() ? constructor.getTextOffset() : offsetStack.pop();
         MethodDescription method = createMethod(constructor, naviOffset);
-        if (makeMethodCallExceptCurrentStackIsRecursive(method)) return;
+        if (makeMethodCallExceptCurrentStackIsRecursive(method, constructor)) return;
 
         // Find KtClassInitializer and call it before constructor
         @NotNull Collection<KtClassInitializer> initializers = PsiTreeUtil.findChildrenOfType(((KtConstructor<?>) constructor).getContainingClassOrObject(), KtClassInitializer.class);
@@ -194,7 +194,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
         }
         final int naviOffset = offsetStack.isEmpty() ? constructor.getTextOffset() : offsetStack.pop();
         MethodDescription method = createMethod(constructor, naviOffset);
-        if (makeMethodCallExceptCurrentStackIsRecursive(method)) return;
+        if (makeMethodCallExceptCurrentStackIsRecursive(method, constructor)) return;
         super.visitSecondaryConstructor(constructor);
     }
 
@@ -227,7 +227,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
             LOGGER.debug("[visitObjectLiteralExpression]" + expression.getText());
         }
         GeneratorFactory
-                .createGenerator(expression.getLanguage(), params)
+                .createGeneratorForLoadedParams(expression.getLanguage(), params)
                 .generate(expression.getObjectDeclaration(), currentStack);
     }
 
@@ -238,7 +238,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
         }
         if (SHOW_LAMBDA_CALL) {
             GeneratorFactory
-                    .createGenerator(lambdaExpression.getLanguage(), params)
+                    .createGeneratorForLoadedParams(lambdaExpression.getLanguage(), params)
                     .generate(lambdaExpression, currentStack);
         } else {
             super.visitLambdaExpression(lambdaExpression);
@@ -282,7 +282,7 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
             currentStack = oldStack;
         } else {
             final MethodDescription method = createMethod(psiElement, offset);
-            makeMethodCallExceptCurrentStackIsRecursive(method);
+            makeMethodCallExceptCurrentStackIsRecursive(method, psiElement);
         }
     }
 
@@ -473,16 +473,16 @@ public class KtSequenceGenerator extends KtTreeVisitorVoid implements IGenerator
         return "Unit";
     }
 
-    private boolean makeMethodCallExceptCurrentStackIsRecursive(MethodDescription method) {
+    private boolean makeMethodCallExceptCurrentStackIsRecursive(MethodDescription method, PsiElement element) {
         if (method == null) return false;
 
         if (topStack == null) {
-            topStack = new CallStack(method);
+            topStack = new CallStack(method).withSource(element);
             currentStack = topStack;
         } else {
             if (params.isNotAllowRecursion() && currentStack.isRecursive(method))
                 return true;
-            currentStack = currentStack.methodCall(method);
+            currentStack = currentStack.methodCall(method).withSource(element);
         }
         return false;
     }
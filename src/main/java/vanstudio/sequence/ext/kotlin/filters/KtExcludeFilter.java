@@ -0,0 +1,32 @@
+package vanstudio.sequence.ext.kotlin.filters;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.psi.KtClass;
+import org.jetbrains.kotlin.psi.KtFunction;
+import vanstudio.sequence.openapi.filters.ExcludeFilter;
+
+import java.util.Collection;
+
+/**
+ * The excluded packages and classes, for Kotlin functions and classes.
+ */
+public class KtExcludeFilter extends ExcludeFilter {
+
+    public KtExcludeFilter(Collection<String> excludeNames) {
+        super(excludeNames);
+    }
+
+    @Override
+    protected @Nullable String getClassName(@NotNull PsiElement psiElement) {
+        if (psiElement instanceof KtFunction) {
+            KtFunction function = (KtFunction) psiElement;
+            return function.getFqName() == null ? null : function.getFqName().parent().asString();
+        } else if (psiElement instanceof KtClass) {
+            KtClass ktClass = (KtClass) psiElement;
+            return ktClass.getFqName() == null ? null : ktClass.getFqName().asString();
+        }
+        return null;
+    }
+}
@@ -20,6 +20,11 @@ public class KtNoConstructorsFilter implements MethodFilter {
         return true;
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LOW;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -15,6 +15,11 @@ public class KtNoPrivateMethodsFilter implements MethodFilter {
         return true;
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LOW;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -4,9 +4,11 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.Separator;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiCompiledElement;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiModifier;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.uast.*;
 import org.jetbrains.uast.visitor.AbstractUastVisitor;
@@ -17,6 +19,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 public class UastActionFinder implements ActionFinder {
+    private static final Logger LOGGER = Logger.getInstance(UastActionFinder.class);
 
     @NotNull
     @Override
@@ -52,6 +55,38 @@ public class UastActionFinder implements ActionFinder {
         return list.toArray(new AnAction[0]);
     }
 
+    @NotNull
+    @Override
+    public List<PsiElement> findPublicMethods(@NotNull Project project, @NotNull PsiElement element) {
+        if (element instanceof PsiCompiledElement) {
+            return List.of();
+        }
+
+        List<PsiElement> list = new ArrayList<>();
+
+        try {
+            UElement uElement = UastContextKt.toUElement(element);
+            if (uElement != null) {
+                uElement.accept(new AbstractUastVisitor() {
+                    @Override
+                    public boolean visitClass(@NotNull UClass node) {
+                        for (UMethod method : node.getMethods()) {
+                            PsiElement sourcePsi = method.getSourcePsi();
+                            if (sourcePsi != null && method.hasModifierProperty(PsiModifier.PUBLIC))
+                                list.add(sourcePsi);
+                        }
+                        return false;
+                    }
+                });
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to find the public methods of " + element, e);
+            // see find()
+        }
+
+        return list;
+    }
+
     private AnAction[] getActions(UClass uClass, Task task) {
         ArrayList<AnAction> subList = new ArrayList<>();
 
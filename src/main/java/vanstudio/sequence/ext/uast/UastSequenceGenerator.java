@@ -62,7 +62,7 @@ public class UastSequenceGenerator extends AbstractUastVisitor implements IGener
 
     private void generateLambda(ULambdaExpression node) {
         MethodDescription method = MyUastUtilKt.createMethod(node, MyPsiUtil.findNaviOffset(node.getSourcePsi()));
-        makeMethodCallExceptCurrentStackIsRecursive(method);
+        makeMethodCallExceptCurrentStackIsRecursive(method, node.getSourcePsi());
         node.getBody().accept(this);
     }
 
@@ -104,14 +104,14 @@ public class UastSequenceGenerator extends AbstractUastVisitor implements IGener
         }
     }
 
-    private boolean makeMethodCallExceptCurrentStackIsRecursive(MethodDescription method) {
+    private boolean makeMethodCallExceptCurrentStackIsRecursive(MethodDescription method, PsiElement element) {
         if (topStack == null) {
-            topStack = new CallStack(method);
+            topStack = new CallStack(method).withSource(element);
             currentStack = topStack;
         } else {
             if (params.isNotAllowRecursion() && currentStack.isRecursive(method))
                 return true;
-            currentStack = currentStack.methodCall(method);
+            currentStack = currentStack.methodCall(method).withSource(element);
         }
         return false;
     }
@@ -130,7 +130,7 @@ public class UastSequenceGenerator extends AbstractUastVisitor implements IGener
             currentStack = oldStack;
         } else {
             UMethod uMethod = UastContextKt.toUElement(psiMethod, UMethod.class);
-            if (uMethod != null) currentStack.methodCall(MyUastUtilKt.createMethod(uMethod, offset));
+            if (uMethod != null) currentStack.methodCall(MyUastUtilKt.createMethod(uMethod, offset)).withSource(uMethod.getSourcePsi());
         }
     }
 
@@ -140,7 +140,7 @@ public class UastSequenceGenerator extends AbstractUastVisitor implements IGener
         int offset = offsetStack.isEmpty() ? MyPsiUtil.findNaviOffset(node.getSourcePsi()) : offsetStack.pop();
 
         MethodDescription method = MyUastUtilKt.createMethod(node, offset);
-        return makeMethodCallExceptCurrentStackIsRecursive(method);
+        return makeMethodCallExceptCurrentStackIsRecursive(method, node.getSourcePsi());
 //        return super.visitMethod(node);
     }
 
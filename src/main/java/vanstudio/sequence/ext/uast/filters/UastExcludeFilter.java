@@ -0,0 +1,31 @@
+package vanstudio.sequence.ext.uast.filters;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.uast.*;
+import vanstudio.sequence.openapi.Constants;
+import vanstudio.sequence.openapi.filters.ExcludeFilter;
+
+import java.util.Collection;
+
+/**
+ * The excluded packages and classes, for UAST methods.
+ */
+public class UastExcludeFilter extends ExcludeFilter {
+
+    public UastExcludeFilter(Collection<String> excludeNames) {
+        super(excludeNames);
+    }
+
+    @Override
+    protected @Nullable String getClassName(@NotNull PsiElement psiElement) {
+        UMethod uMethod = UastContextKt.toUElement(psiElement, UMethod.class);
+        if (uMethod == null)
+            return null;
+        UClass uClass = UastUtils.getContainingUClass(uMethod);
+        if (uClass == null || uClass.getQualifiedName() == null)
+            return Constants.ANONYMOUS_CLASS_NAME;
+        return uClass.getQualifiedName();
+    }
+}
@@ -2,6 +2,24 @@ package vanstudio.sequence.formatter;
 
 import vanstudio.sequence.openapi.model.CallStack;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public interface IFormatter {
-    String format(CallStack callStack);
+    default String format(CallStack callStack) {
+        StringBuilder buffer = new StringBuilder();
+        try {
+            format(callStack, buffer);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Write the diagram as it is generated, so that big diagrams go straight to a
+     * <code>Writer</code> without being built up as one string.
+     */
+    void format(CallStack callStack, Appendable out) throws IOException;
 }
@@ -1,10 +1,11 @@
 package vanstudio.sequence.formatter;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import vanstudio.sequence.config.SequenceSettingsState;
 import vanstudio.sequence.openapi.model.CallStack;
 import vanstudio.sequence.openapi.model.MethodDescription;
 
+import java.io.IOException;
+
 /**
  * Generate Mermaid Sequence Diagram format.
  *
@@ -12,39 +13,42 @@ import vanstudio.sequence.openapi.model.MethodDescription;
  */
 public class MermaidFormatter implements IFormatter{
     @Override
-    public String format(CallStack callStack) {
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("sequenceDiagram").append('\n');
-        buffer.append("actor User").append('\n');
+    public void format(CallStack callStack, Appendable out) throws IOException {
+        boolean simplifyCallName = SequenceSettingsState.getInstance().SHOW_SIMPLIFY_CALL_NAME;
+        out.append("sequenceDiagram").append('\n');
+        out.append("actor User").append('\n');
         String classA = callStack.getMethod().getClassDescription().getClassShortName();
-        String method = getMethodName(callStack.getMethod());
-        buffer.append("User").append(" ->> ").append(classA).append(" : ").append(escape(method)).append('\n');
-        buffer.append("activate ").append(classA).append('\n');
-        generate(buffer, callStack);
-        buffer.append("deactivate ").append(classA).append('\n');
-//        buffer.append("@enduml");
-        return buffer.toString();
+        String method = getMethodName(callStack.getMethod(), simplifyCallName);
+        out.append("User").append(" ->> ").append(classA).append(" : ");
+        escape(out, method);
+        out.append('\n');
+        out.append("activate ").append(classA).append('\n');
+        generate(out, callStack, simplifyCallName);
+        out.append("deactivate ").append(classA).append('\n');
+//        out.append("@enduml");
     }
 
-    private void generate(StringBuffer buffer, CallStack parent) {
+    private void generate(Appendable out, CallStack parent, boolean simplifyCallName) throws IOException {
         String classA = parent.getMethod().getClassDescription().getClassShortName();
 
         for (CallStack callStack : parent.getCalls()) {
             String classB = callStack.getMethod().getClassDescription().getClassShortName();
-            String method = getMethodName(callStack.getMethod());
-            buffer.append(classA).append(" ->> ").append(classB).append(" : ").append(escape(method)).append('\n');
-            buffer.append("activate ").append(classB).append('\n');
-            generate(buffer, callStack);
-            buffer.append(classB).append(" -->> ").append(classA).append(" : #32; ").append('\n');
-            buffer.append("deactivate ").append(classB).append('\n');
+            String method = getMethodName(callStack.getMethod(), simplifyCallName);
+            out.append(classA).append(" ->> ").append(classB).append(" : ");
+            escape(out, method);
+            out.append('\n');
+            out.append("activate ").append(classB).append('\n');
+            generate(out, callStack, simplifyCallName);
+            out.append(classB).append(" -->> ").append(classA).append(" : #32; ").append('\n');
+            out.append("deactivate ").append(classB).append('\n');
         }
 
     }
 
-    private String getMethodName(MethodDescription method) {
+    private String getMethodName(MethodDescription method, boolean simplifyCallName) {
         if (method == null) return "";
 
-        if (SequenceSettingsState.getInstance().SHOW_SIMPLIFY_CALL_NAME) {
+        if (simplifyCallName) {
             return method.getMethodName();
         } else {
             return method.getFullName();
@@ -52,7 +56,30 @@ public class MermaidFormatter implements IFormatter{
 
     }
 
-    private String escape(String method) {
-        return StringEscapeUtils.escapeHtml(method);
+    /**
+     * Write the label as html text: markup characters as entities and the others above ascii as
+     * numeric references. Runs of plain characters are written at once.
+     */
+    static void escape(Appendable out, String text) throws IOException {
+        int start = 0;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            int next = i + Character.charCount(c);
+            String entity = c == '&' ? "&amp;"
+                    : c == '<' ? "&lt;"
+                    : c == '>' ? "&gt;"
+                    : c == '"' ? "&quot;"
+                    : null;
+            if (entity != null || c > 0x7f) {
+                out.append(text, start, i);
+                if (entity != null)
+                    out.append(entity);
+                else
+                    out.append("&#").append(Integer.toString(c)).append(';');
+                start = next;
+            }
+            i = next;
+        }
+        out.append(text, start, text.length());
     }
 }
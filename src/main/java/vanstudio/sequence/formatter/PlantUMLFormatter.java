@@ -5,51 +5,52 @@ import vanstudio.sequence.config.SequenceSettingsState;
 import vanstudio.sequence.openapi.model.CallStack;
 import vanstudio.sequence.openapi.model.MethodDescription;
 
+import java.io.IOException;
+
 /**
  * Generate <a href="https://plantuml.com/sequence-diagram">PlantUml sequence diagram</a> format.
  *
  */
 public class PlantUMLFormatter implements IFormatter{
     @Override
-    public String format(CallStack callStack) {
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("@startuml").append('\n');
-        buffer.append("participant Actor").append('\n');
+    public void format(CallStack callStack, Appendable out) throws IOException {
+        boolean simplifyCallName = SequenceSettingsState.getInstance().SHOW_SIMPLIFY_CALL_NAME;
+        out.append("@startuml").append('\n');
+        out.append("participant Actor").append('\n');
         String classA = callStack.getMethod().getClassDescription().getClassShortName();
-        String method = getMethodName(callStack.getMethod());
+        String method = getMethodName(callStack.getMethod(), simplifyCallName);
         if (Constants.CONSTRUCTOR_METHOD_NAME.equals(callStack.getMethod().getMethodName())) {
-            buffer.append("create ").append(classA).append('\n');
+            out.append("create ").append(classA).append('\n');
         }
-        buffer.append("Actor").append(" -> ").append(classA).append(" : ").append(method).append('\n');
-        buffer.append("activate ").append(classA).append('\n');
-        generate(buffer, callStack);
-        buffer.append("return").append('\n');
-        buffer.append("@enduml");
-        return buffer.toString();
+        out.append("Actor").append(" -> ").append(classA).append(" : ").append(method).append('\n');
+        out.append("activate ").append(classA).append('\n');
+        generate(out, callStack, simplifyCallName);
+        out.append("return").append('\n');
+        out.append("@enduml");
     }
 
-    private void generate(StringBuffer buffer, CallStack parent) {
+    private void generate(Appendable out, CallStack parent, boolean simplifyCallName) throws IOException {
         String classA = parent.getMethod().getClassDescription().getClassShortName();
 
         for (CallStack callStack : parent.getCalls()) {
             String classB = callStack.getMethod().getClassDescription().getClassShortName();
-            String method = getMethodName(callStack.getMethod());
+            String method = getMethodName(callStack.getMethod(), simplifyCallName);
             if (Constants.CONSTRUCTOR_METHOD_NAME.equals(callStack.getMethod().getMethodName())) {
-                buffer.append("create ").append(classB).append('\n');
+                out.append("create ").append(classB).append('\n');
             }
-            buffer.append(classA).append(" -> ").append(classB).append(" : ").append(method).append('\n');
-            buffer.append("activate ").append(classB).append('\n');
-            generate(buffer, callStack);
-            buffer.append(classB).append(" --> ").append(classA).append('\n');
-            buffer.append("deactivate ").append(classB).append('\n');
+            out.append(classA).append(" -> ").append(classB).append(" : ").append(method).append('\n');
+            out.append("activate ").append(classB).append('\n');
+            generate(out, callStack, simplifyCallName);
+            out.append(classB).append(" --> ").append(classA).append('\n');
+            out.append("deactivate ").append(classB).append('\n');
         }
 
     }
 
-    private String getMethodName(MethodDescription method) {
+    private String getMethodName(MethodDescription method, boolean simplifyCallName) {
         if (method == null) return "";
 
-        if (SequenceSettingsState.getInstance().SHOW_SIMPLIFY_CALL_NAME) {
+        if (simplifyCallName) {
             return method.getMethodName();
         } else {
             return method.getFullName();
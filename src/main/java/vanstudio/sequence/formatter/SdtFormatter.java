@@ -2,19 +2,19 @@ package vanstudio.sequence.formatter;
 
 import vanstudio.sequence.openapi.model.CallStack;
 
+import java.io.IOException;
+
 public class SdtFormatter implements IFormatter{
     @Override
-    public String format(CallStack callStack) {
-        StringBuffer buffer = new StringBuffer();
-        generate(buffer, callStack);
-        return buffer.toString();
+    public void format(CallStack callStack, Appendable out) throws IOException {
+        generate(out, callStack);
     }
 
-    private void generate(StringBuffer buffer, CallStack parent) {
-        buffer.append('(').append('\n').append(parent.getMethod().toJson()).append('\n');
+    private void generate(Appendable out, CallStack parent) throws IOException {
+        out.append('(').append('\n').append(parent.getMethod().toJson()).append('\n');
         for (CallStack callStack : parent.getCalls()) {
-            generate(buffer, callStack);
+            generate(out, callStack);
         }
-        buffer.append(')').append('\n');
+        out.append(')').append('\n');
     }
 }
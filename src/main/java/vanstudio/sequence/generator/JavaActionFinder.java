@@ -55,6 +55,24 @@ public class JavaActionFinder implements ActionFinder {
         return list.toArray(new AnAction[0]);
     }
 
+    @NotNull
+    @Override
+    public List<PsiElement> findPublicMethods(@NotNull Project project, @NotNull PsiElement element) {
+        Collection<PsiClass> psiClassCollection = element instanceof PsiClass
+                ? List.of((PsiClass) element)
+                : PsiTreeUtil.findChildrenOfType(element, PsiClass.class);
+
+        List<PsiElement> list = new ArrayList<>();
+        for (PsiClass psiClass : psiClassCollection) {
+            if (psiClass instanceof PsiTypeParameter) continue;
+            for (PsiMethod method : psiClass.getMethods()) {
+                if (method.hasModifierProperty(PsiModifier.PUBLIC))
+                    list.add(method);
+            }
+        }
+        return list;
+    }
+
     private AnAction[] getActions(PsiClass psiClass, Task task) {
         PsiMethod[] methods = psiClass.getMethods();
         ArrayList<AnAction> subList = new ArrayList<>();
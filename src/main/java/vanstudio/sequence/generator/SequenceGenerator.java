@@ -71,7 +71,7 @@ public class SequenceGenerator extends JavaRecursiveElementVisitor implements IG
      */
     private CallStack generate(PsiLambdaExpression expression) {
         MethodDescription method = createMethod(expression);
-        makeMethodCallExceptCurrentStackIsRecursive(method);
+        makeMethodCallExceptCurrentStackIsRecursive(method, expression);
         super.visitLambdaExpression(expression);
         return topStack;
     }
@@ -96,8 +96,8 @@ public class SequenceGenerator extends JavaRecursiveElementVisitor implements IG
 
         final IGenerator ktSequenceGenerator =
                 offsetStack.isEmpty()
-                        ? GeneratorFactory.createGenerator(psiMethod.getLanguage(), params)
-                        : GeneratorFactory.createGenerator(psiMethod.getLanguage(), params, offsetStack.pop());
+                        ? GeneratorFactory.createGeneratorForLoadedParams(psiMethod.getLanguage(), params)
+                        : GeneratorFactory.createGeneratorForLoadedParams(psiMethod.getLanguage(), params, offsetStack.pop());
         CallStack kotlinCall = ktSequenceGenerator.generate(psiMethod.getNavigationElement(), currentStack);
         if (topStack == null) {
             topStack = kotlinCall;
@@ -173,7 +173,7 @@ public class SequenceGenerator extends JavaRecursiveElementVisitor implements IG
     public void visitMethod(PsiMethod psiMethod) {
         int offset = offsetStack.isEmpty() ? psiMethod.getTextOffset() : offsetStack.pop();
         MethodDescription method = createMethod(psiMethod, offset);
-        if (makeMethodCallExceptCurrentStackIsRecursive(method)) return;
+        if (makeMethodCallExceptCurrentStackIsRecursive(method, psiMethod)) return;
         super.visitMethod(psiMethod);
     }
 
@@ -240,7 +240,7 @@ public class SequenceGenerator extends JavaRecursiveElementVisitor implements IG
             LOGGER.debug("- depth = " + currentStack.level() + " method = " + psiMethod.getName());
             currentStack = oldStack;
         } else
-            currentStack.methodCall(createMethod(psiMethod, offset));
+            currentStack.methodCall(createMethod(psiMethod, offset)).withSource(psiMethod);
     }
 
     private MethodDescription createMethod(PsiMethod psiMethod, int offset) {
@@ -419,21 +419,21 @@ public class SequenceGenerator extends JavaRecursiveElementVisitor implements IG
     public void visitLambdaExpression(PsiLambdaExpression expression) {
         if (SHOW_LAMBDA_CALL) {
             GeneratorFactory
-                    .createGenerator(expression.getLanguage(), params)
+                    .createGeneratorForLoadedParams(expression.getLanguage(), params)
                     .generate(expression, currentStack);
         } else {
             super.visitLambdaExpression(expression);
         }
     }
 
-    private boolean makeMethodCallExceptCurrentStackIsRecursive(MethodDescription method) {
+    private boolean makeMethodCallExceptCurrentStackIsRecursive(MethodDescription method, PsiElement element) {
         if (topStack == null) {
-            topStack = new CallStack(method);
+            topStack = new CallStack(method).withSource(element);
             currentStack = topStack;
         } else {
             if (params.isNotAllowRecursion() && currentStack.isRecursive(method))
                 return true;
-            currentStack = currentStack.methodCall(method);
+            currentStack = currentStack.methodCall(method).withSource(element);
         }
         return false;
     }
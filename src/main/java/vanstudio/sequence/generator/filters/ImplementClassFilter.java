@@ -1,10 +1,12 @@
 package vanstudio.sequence.generator.filters;
 
+import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiMethod;
+import org.jetbrains.annotations.Nullable;
 import vanstudio.sequence.openapi.filters.MethodFilter;
 
-import java.util.Arrays;
+import java.util.*;
 
 /**
  * The implement class should be included.
@@ -14,20 +16,33 @@ import java.util.Arrays;
  */
 public class ImplementClassFilter implements MethodFilter {
 
-    private final String[] classNames;
+    private final Set<String> classNames;
 
     public ImplementClassFilter(String... className) {
-        classNames = className;
+        classNames = new LinkedHashSet<>(Arrays.asList(className));
+    }
+
+    /**
+     * @return the qualified names of the implement classes included
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(classNames);
     }
 
     @Override
     public boolean allow(PsiElement psiElement) {
+        String className = getClassName(psiElement);
+        return className != null && classNames.contains(className);
+    }
+
+    /**
+     * @return qualified name of the class of the method, or null if the element is not a method of a named class
+     */
+    public static @Nullable String getClassName(PsiElement psiElement) {
         if (psiElement instanceof PsiMethod) {
-            PsiMethod psiMethod = (PsiMethod) psiElement;
-            return psiMethod.getContainingClass() != null
-                    && psiMethod.getContainingClass().getQualifiedName() != null
-                    && Arrays.stream(classNames).anyMatch(s -> s.equals(psiMethod.getContainingClass().getQualifiedName()));
+            PsiClass containingClass = ((PsiMethod) psiElement).getContainingClass();
+            return containingClass == null ? null : containingClass.getQualifiedName();
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,31 @@
+package vanstudio.sequence.generator.filters;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import vanstudio.sequence.openapi.Constants;
+import vanstudio.sequence.openapi.filters.ExcludeFilter;
+
+import java.util.Collection;
+
+/**
+ * The excluded packages and classes, for Java methods.
+ */
+public class JavaExcludeFilter extends ExcludeFilter {
+
+    public JavaExcludeFilter(Collection<String> excludeNames) {
+        super(excludeNames);
+    }
+
+    @Override
+    protected @Nullable String getClassName(@NotNull PsiElement psiElement) {
+        if (!(psiElement instanceof PsiMethod))
+            return null;
+        PsiClass containingClass = ((PsiMethod) psiElement).getContainingClass();
+        if (containingClass == null || containingClass.getQualifiedName() == null)
+            return Constants.ANONYMOUS_CLASS_NAME;
+        return containingClass.getQualifiedName();
+    }
+}
@@ -22,6 +22,11 @@ public class NoConstructorsFilter implements MethodFilter {
         return true;
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LOW;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -28,6 +28,11 @@ public class NoGetterSetterFilter implements MethodFilter {
               PropertyUtil.isSimplePropertySetter(psiMethod);
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.HIGH;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -26,6 +26,11 @@ public class NoPrivateMethodsFilter implements MethodFilter {
         return psiMethod.getModifierList().hasModifierProperty("private");
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LOW;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
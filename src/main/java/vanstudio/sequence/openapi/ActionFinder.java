@@ -9,6 +9,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public interface ActionFinder {
     static String[] UAST_Language = new String[] {
@@ -30,6 +32,17 @@ public interface ActionFinder {
 
     AnAction[] find(@NotNull Project project, @NotNull PsiElement element, Task task);
 
+    /**
+     * Find the public methods of the classes in the element, the entry points of a bulk generation.
+     * Called in a read action.
+     * @param element a file or class
+     * @return elements the generator accepts, in the order of the source
+     */
+    @NotNull
+    default List<PsiElement> findPublicMethods(@NotNull Project project, @NotNull PsiElement element) {
+        return Collections.emptyList();
+    }
+
     /**
      * {@code Task.run} should be called in {@code AnAction.actionPerformed}
      */
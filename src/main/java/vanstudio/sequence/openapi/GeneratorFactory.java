@@ -7,6 +7,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import vanstudio.sequence.openapi.model.CallStack;
 
+import java.util.Set;
+
 public abstract class GeneratorFactory {
 
     private static final LanguageExtension<GeneratorFactory> EP_NAME = new LanguageExtension<>("SequenceDiagram.generator");
@@ -17,7 +19,7 @@ public abstract class GeneratorFactory {
         if (factory == null) {
             return new UnsupportedGenerator();
         }
-        factory.loadParams(params);
+        load(factory, language, params);
         return factory.getGenerator(params);
     }
 
@@ -27,10 +29,64 @@ public abstract class GeneratorFactory {
         if (factory == null) {
             return new UnsupportedGenerator();
         }
-        factory.loadParams(params);
+        load(factory, language, params);
         return factory.getGenerator(params, offset);
     }
 
+    /**
+     * Create a generator for params loaded before by {@link #createGenerator(Language, SequenceParams)},
+     * so that many generations share the filters and what they remember. The params of a language
+     * not loaded yet, reached by a call into another language, are loaded once.
+     */
+    @NotNull
+    public static IGenerator createGeneratorForLoadedParams(Language language, SequenceParams params) {
+        GeneratorFactory factory = EP_NAME.forLanguage(language);
+        if (factory == null) {
+            return new UnsupportedGenerator();
+        }
+        loadOnce(factory, language, params);
+        return factory.getGenerator(params);
+    }
+
+    /**
+     * @see #createGeneratorForLoadedParams(Language, SequenceParams)
+     */
+    @NotNull
+    public static IGenerator createGeneratorForLoadedParams(Language language, SequenceParams params, int offset) {
+        GeneratorFactory factory = EP_NAME.forLanguage(language);
+        if (factory == null) {
+            return new UnsupportedGenerator();
+        }
+        loadOnce(factory, language, params);
+        return factory.getGenerator(params, offset);
+    }
+
+    /**
+     * Load the params of the language a generation starts in. The other languages are loaded
+     * again when the generation calls into them, with the settings of now.
+     */
+    private static void load(GeneratorFactory factory, Language language, SequenceParams params) {
+        Set<String> loaded = params.getLoadedLanguages();
+        synchronized (loaded) {
+            loaded.clear();
+            factory.loadParams(params);
+            loaded.add(language.getID());
+        }
+    }
+
+    /**
+     * Generations sharing the method filter wait here while another one adds the filters of the language.
+     */
+    private static void loadOnce(GeneratorFactory factory, Language language, SequenceParams params) {
+        Set<String> loaded = params.getLoadedLanguages();
+        synchronized (loaded) {
+            if (!loaded.contains(language.getID())) {
+                factory.loadParams(params);
+                loaded.add(language.getID());
+            }
+        }
+    }
+
     @NotNull
     public abstract IGenerator getGenerator(@NotNull SequenceParams params);
 
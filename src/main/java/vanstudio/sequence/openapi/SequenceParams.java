@@ -3,6 +3,9 @@ package vanstudio.sequence.openapi;
 import vanstudio.sequence.openapi.filters.CompositeElementFilter;
 import vanstudio.sequence.openapi.filters.ImplementationWhiteList;
 
+import java.util.HashSet;
+import java.util.Set;
+
 public class SequenceParams {
     public static final String PACKAGE_INDICATOR = ".*";
     public static final String RECURSIVE_PACKAGE_INDICATOR = ".**";
@@ -11,10 +14,30 @@ public class SequenceParams {
     private boolean _allowRecursion = false;
     @Deprecated(since = "2.2.0", forRemoval = true)
     private boolean smartInterface = false;
-    private final CompositeElementFilter _methodFilter = new CompositeElementFilter();
+    private final CompositeElementFilter _methodFilter;
+    /** ids of the languages whose filters were added to the method filter, guarding it */
+    private final Set<String> _loadedLanguages;
     private final ImplementationWhiteList _implFilter = new ImplementationWhiteList();
 
     public SequenceParams() {
+        this(new CompositeElementFilter(), new HashSet<>());
+    }
+
+    private SequenceParams(CompositeElementFilter methodFilter, Set<String> loadedLanguages) {
+        _methodFilter = methodFilter;
+        _loadedLanguages = loadedLanguages;
+    }
+
+    /**
+     * @return params for another generation sharing the method filters, with an implementation white
+     * list of its own since generating adds to it. The filters only change when a generation first
+     * calls into a language not loaded yet, see {@link GeneratorFactory#createGeneratorForLoadedParams}.
+     */
+    public SequenceParams withSharedMethodFilter() {
+        SequenceParams params = new SequenceParams(_methodFilter, _loadedLanguages);
+        params._maxDepth = _maxDepth;
+        params._allowRecursion = _allowRecursion;
+        return params;
     }
 
     public int getMaxDepth() {
@@ -47,6 +70,10 @@ public class SequenceParams {
         return _methodFilter;
     }
 
+    Set<String> getLoadedLanguages() {
+        return _loadedLanguages;
+    }
+
     public ImplementationWhiteList getImplementationWhiteList() {
         return _implFilter;
     }
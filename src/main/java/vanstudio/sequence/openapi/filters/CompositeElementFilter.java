@@ -1,21 +1,57 @@
 package vanstudio.sequence.openapi.filters;
 
+import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.containers.ContainerUtil;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * All the method filters of the generations of a project, compiled into a pipeline asking the
+ * cheapest filters first. The filters depending only on the file of a method are asked once per
+ * file, and the decisions are remembered per method, until the psi changes or a filter is added
+ * or removed.
+ * <p>
+ * Safe to share between the parallel generations of a bulk generation. Counts how many methods
+ * each filter rejected and the time it took, see {@link #getStatistics()}.
+ */
 public class CompositeElementFilter implements MethodFilter {
+    private static final int REJECTED_SAMPLES = 5;
+
     private final List<MethodFilter> _filters = new ArrayList<>();
+    /** replaced under the lock when the filters change, and by a compare and set when the psi does */
+    private final AtomicReference<Pipeline> _pipeline = new AtomicReference<>(new Pipeline(List.of(), -1));
+    private volatile Project _project;
 
-    public void addFilter(MethodFilter filter) {
+    public synchronized void addFilter(MethodFilter filter) {
         //remove old if exist
         _filters.remove(filter);
         _filters.add(filter);
+        compile();
     }
 
-    public void removeFilter(MethodFilter filter) {
+    public synchronized void removeFilter(MethodFilter filter) {
         _filters.remove(filter);
+        compile();
+    }
+
+    /**
+     * Order the filters by cost, keeping the statistics of the filters already there.
+     */
+    private void compile() {
+        Map<MethodFilter, Step> steps = new IdentityHashMap<>();
+        for (Step step : _pipeline.get()._steps)
+            steps.put(step._filter, step);
+        List<Step> ordered = new ArrayList<>();
+        for (MethodFilter filter : _filters)
+            ordered.add(steps.containsKey(filter) ? steps.get(filter) : new Step(filter));
+        ordered.sort(Comparator.comparing(step -> step._filter.getCost()));
+        _pipeline.set(new Pipeline(ordered, -1));
     }
 
     /**
@@ -25,12 +61,125 @@ public class CompositeElementFilter implements MethodFilter {
      */
     @Override
     public boolean allow(PsiElement psiElement) {
-        for (MethodFilter psiElementFilter : _filters) {
-            if (!psiElementFilter.allow(psiElement)) {
-                return false;
+        Pipeline pipeline = _pipeline.get();
+        if (pipeline._steps.isEmpty())
+            return true;
+
+        long modificationCount = getModificationCount(psiElement);
+        while (pipeline._modificationCount != modificationCount) {
+            // a pipeline compiled meanwhile for added or removed filters is not lost
+            Pipeline updated = new Pipeline(pipeline._steps, modificationCount);
+            pipeline = _pipeline.compareAndSet(pipeline, updated) ? updated : _pipeline.get();
+        }
+        Boolean allowed = pipeline._methods.get(psiElement);
+        if (allowed == null) {
+            allowed = pipeline.allow(psiElement);
+            pipeline._methods.put(psiElement, allowed);
+        }
+        return allowed;
+    }
+
+    private long getModificationCount(PsiElement psiElement) {
+        Project project = _project;
+        if (project == null)
+            _project = project = psiElement.getProject();
+        return PsiModificationTracker.getInstance(project).getModificationCount();
+    }
+
+    /**
+     * @return for each filter, in the order asked: how many methods it was asked about, how many it
+     * rejected and some of them, and the time it took
+     */
+    public String getStatistics() {
+        StringBuilder statistics = new StringBuilder();
+        for (Step step : _pipeline.get()._steps) {
+            statistics.append(String.format("%s%s: %d asked, %d rejected in %.1f ms",
+                    step._filter.isPerFile() ? "per file " : "", step._filter,
+                    step._asked.sum(), step._rejected.sum(), step._nanos.sum() / 1e6));
+            if (!step._rejectedSamples.isEmpty())
+                statistics.append(", e.g. ").append(String.join(", ", step._rejectedSamples));
+            statistics.append('\n');
+        }
+        return statistics.toString();
+    }
+
+    /**
+     * The filters in the order asked, and the decisions for the psi at a modification count.
+     */
+    private static final class Pipeline {
+        private final List<Step> _steps;
+        private final long _modificationCount;
+        private final Map<PsiElement, Boolean> _methods = ContainerUtil.createConcurrentWeakMap();
+        private final Map<PsiFile, Boolean> _files = ContainerUtil.createConcurrentWeakMap();
+        /** index of the first per file filter, where all of them are asked */
+        private final int _perFileIndex;
+
+        Pipeline(List<Step> steps, long modificationCount) {
+            _steps = steps;
+            _modificationCount = modificationCount;
+            int perFileIndex = -1;
+            for (int i = 0; i < steps.size() && perFileIndex < 0; ++i) {
+                if (steps.get(i)._filter.isPerFile())
+                    perFileIndex = i;
+            }
+            _perFileIndex = perFileIndex;
+        }
+
+        boolean allow(PsiElement psiElement) {
+            for (int i = 0; i < _steps.size(); ++i) {
+                Step step = _steps.get(i);
+                if (i == _perFileIndex) {
+                    if (!allowFile(psiElement))
+                        return false;
+                } else if (!step._filter.isPerFile() && !step.allow(psiElement)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean allowFile(PsiElement psiElement) {
+            PsiFile file = psiElement.getContainingFile();
+            Boolean allowed = file == null ? null : _files.get(file);
+            if (allowed == null) {
+                allowed = true;
+                for (int i = _perFileIndex; i < _steps.size() && allowed; ++i) {
+                    Step step = _steps.get(i);
+                    if (step._filter.isPerFile())
+                        allowed = step.allow(psiElement);
+                }
+                if (file != null)
+                    _files.put(file, allowed);
             }
+            return allowed;
         }
-        return true;
     }
 
+    /**
+     * A filter of the pipeline and its statistics.
+     */
+    private static final class Step {
+        private final MethodFilter _filter;
+        private final LongAdder _asked = new LongAdder();
+        private final LongAdder _rejected = new LongAdder();
+        private final LongAdder _nanos = new LongAdder();
+        private final Queue<String> _rejectedSamples = new ConcurrentLinkedQueue<>();
+
+        Step(MethodFilter filter) {
+            _filter = filter;
+        }
+
+        boolean allow(PsiElement psiElement) {
+            long start = System.nanoTime();
+            boolean allowed = _filter.allow(psiElement);
+            _nanos.add(System.nanoTime() - start);
+            _asked.increment();
+            if (!allowed) {
+                _rejected.increment();
+                if (_rejectedSamples.size() < REJECTED_SAMPLES)
+                    _rejectedSamples.add(String.valueOf(psiElement));
+            }
+            return allowed;
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package vanstudio.sequence.openapi.filters;
+
+import com.intellij.psi.PsiClassOwner;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import vanstudio.sequence.util.ExclusionTrie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * All the exclusions of the settings in one filter: packages (<code>a.b.*</code>), packages with
+ * their sub-packages (<code>a.b.**</code>) and single classes. The names are matched by one
+ * {@link ExclusionTrie}, so the cost does not grow with the number of exclusions.
+ */
+public abstract class ExcludeFilter implements MethodFilter {
+    private final List<String> _excludeNames;
+    private final ExclusionTrie _exclusions;
+
+    /**
+     * @param excludeNames the enabled exclusions of the settings
+     */
+    protected ExcludeFilter(Collection<String> excludeNames) {
+        _excludeNames = new ArrayList<>(excludeNames);
+        _exclusions = new ExclusionTrie(_excludeNames);
+    }
+
+    @Override
+    public boolean allow(PsiElement psiElement) {
+        return _exclusions.isEmpty() || !_exclusions.isExcluded(getPackageName(psiElement), getClassName(psiElement));
+    }
+
+    /**
+     * Looks up names in the trie, and the class of the element among its parents.
+     */
+    @Override
+    public Cost getCost() {
+        return Cost.MEDIUM;
+    }
+
+    /**
+     * @return true if only packages are excluded, they are those of the files
+     */
+    @Override
+    public boolean isPerFile() {
+        return !_exclusions.hasClasses();
+    }
+
+    /**
+     * @return the package of the file of the element, for Java and Kotlin alike, or null if it has none
+     */
+    protected @Nullable String getPackageName(@NotNull PsiElement psiElement) {
+        PsiFile file = psiElement.getContainingFile();
+        return file instanceof PsiClassOwner ? ((PsiClassOwner) file).getPackageName() : null;
+    }
+
+    /**
+     * @return qualified name of the class of the method, {@link vanstudio.sequence.openapi.Constants#ANONYMOUS_CLASS_NAME}
+     * for anonymous classes, or null if the element is not one the class exclusions apply to
+     */
+    protected abstract @Nullable String getClassName(@NotNull PsiElement psiElement);
+
+    /**
+     * All exclude filters of a language are equal, so that adding the filter for the current
+     * settings replaces the one for the old settings.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o != null && getClass() == o.getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + _excludeNames;
+    }
+}
@@ -1,29 +1,42 @@
 package vanstudio.sequence.openapi.filters;
 
 import com.intellij.psi.PsiElement;
+import vanstudio.sequence.generator.filters.ImplementClassFilter;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * The interface should be included.
+ * <p>
+ * The implement classes of the {@link ImplementClassFilter}s are indexed, so that {@link #allow}
+ * is a lookup of the class of the method however many interfaces are in the list.
  *
  * &copy; fanhuagang@gmail.com
  * Created by van on 17/10/2016.
  */
 public class ImplementationWhiteList implements MethodFilter {
     private final HashMap<String, MethodFilter> filters = new HashMap<>();
+    /** the interfaces whose filter includes each implement class */
+    private final HashMap<String, Set<String>> interfacesByImpl = new HashMap<>();
+    /** filters other than {@link ImplementClassFilter}, asked one by one */
+    private int otherFilters;
 
     public void clear() {
         filters.clear();
+        interfacesByImpl.clear();
+        otherFilters = 0;
     }
 
     public void put(String key, MethodFilter filter) {
-        filters.put(key, filter);
+        unindex(key, filters.put(key, filter));
+        index(key, filter);
     }
 
     public void putIfAbsent(String key, MethodFilter filter) {
         if (!contain(key)) {
-            filters.put(key, filter);
+            put(key, filter);
         }
     }
 
@@ -35,11 +48,37 @@ public class ImplementationWhiteList implements MethodFilter {
         return filters.containsKey(key);
     }
 
+    private void index(String key, MethodFilter filter) {
+        if (filter instanceof ImplementClassFilter) {
+            for (String className : ((ImplementClassFilter) filter).getClassNames())
+                interfacesByImpl.computeIfAbsent(className, k -> new HashSet<>()).add(key);
+        } else {
+            ++otherFilters;
+        }
+    }
+
+    private void unindex(String key, MethodFilter filter) {
+        if (filter instanceof ImplementClassFilter) {
+            for (String className : ((ImplementClassFilter) filter).getClassNames()) {
+                Set<String> interfaces = interfacesByImpl.get(className);
+                if (interfaces != null && interfaces.remove(key) && interfaces.isEmpty())
+                    interfacesByImpl.remove(className);
+            }
+        } else if (filter != null) {
+            --otherFilters;
+        }
+    }
+
     @Override
     public boolean allow(PsiElement psiMethod) {
-        for (MethodFilter filter : filters.values()) {
-            if(filter.allow(psiMethod)) {
-                return true;
+        String className = ImplementClassFilter.getClassName(psiMethod);
+        if (className != null && interfacesByImpl.containsKey(className))
+            return true;
+        if (otherFilters > 0) {
+            for (MethodFilter filter : filters.values()) {
+                if (!(filter instanceof ImplementClassFilter) && filter.allow(psiMethod)) {
+                    return true;
+                }
             }
         }
         return false;
@@ -4,4 +4,28 @@ import com.intellij.psi.PsiElement;
 
 public interface MethodFilter {
     boolean allow(PsiElement psiElement);
+
+    /**
+     * @return how much {@link #allow} costs, a {@link CompositeElementFilter} asks the cheaper filters first
+     */
+    default Cost getCost() {
+        return Cost.MEDIUM;
+    }
+
+    /**
+     * @return true if the decision only depends on the file of the element, e.g. its package or
+     * library, so that a {@link CompositeElementFilter} makes it once per file
+     */
+    default boolean isPerFile() {
+        return false;
+    }
+
+    enum Cost {
+        /** looks at the element only, e.g. its modifiers */
+        LOW,
+        /** looks at its parents, names or file */
+        MEDIUM,
+        /** analyses its body */
+        HIGH
+    }
 }
@@ -25,6 +25,11 @@ public class ProjectOnlyFilter implements MethodFilter {
         return MyPsiUtil.isInJarFileSystem(psiElement) || MyPsiUtil.isInClassFile(psiElement);
     }
 
+    @Override
+    public boolean isPerFile() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -1,6 +1,9 @@
 package vanstudio.sequence.openapi.model;
 
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,6 +12,8 @@ public class CallStack {
     private final MethodDescription _method;
     private final CallStack _parent;
     private final List<CallStack> _calls = new ArrayList<>();
+    private SmartPsiElementPointer<PsiElement> _element;
+    private SmartPsiFileRange _callSite;
 
     public CallStack(@NotNull MethodDescription method) {
         this(method, null);
@@ -25,6 +30,38 @@ public class CallStack {
         return callStack;
     }
 
+    /**
+     * Remember where the method and its call are in the source, so that the diagram navigates to
+     * them without looking them up by name again. The call is at the offset of the method, in the
+     * file of the caller. Called in the read action of the generation.
+     * @param element the method, lambda or class the node was generated from
+     */
+    public CallStack withSource(@Nullable PsiElement element) {
+        if (element == null || !element.isValid())
+            return this;
+        _element = SmartPointerManager.createPointer(element);
+        PsiFile callerFile = _parent == null || _parent._element == null ? null : _parent._element.getContainingFile();
+        if (callerFile != null && _method.getOffset() > 0 && _method.getOffset() <= callerFile.getTextLength()) {
+            _callSite = SmartPointerManager.getInstance(callerFile.getProject())
+                    .createSmartPsiFileRangePointer(callerFile, TextRange.from(_method.getOffset(), 0));
+        }
+        return this;
+    }
+
+    /**
+     * @return the method, lambda or class of the node, or null if not recorded
+     */
+    public @Nullable SmartPsiElementPointer<PsiElement> getElementPointer() {
+        return _element;
+    }
+
+    /**
+     * @return the call of the method in the file of the caller, or null for the top method or if not recorded
+     */
+    public @Nullable SmartPsiFileRange getCallSitePointer() {
+        return _callSite;
+    }
+
     public boolean isRecursive(MethodDescription method) {
         CallStack current = this;
         while(current != null) {
@@ -0,0 +1,119 @@
+package vanstudio.sequence.ui;
+
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.TextFieldWithBrowseButton;
+import com.intellij.openapi.ui.ValidationInfo;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.Nullable;
+import vanstudio.sequence.BulkGenerator;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of a bulk generation: where to write the diagrams, in which formats, with how many threads.
+ */
+public class BulkGenerateDialog extends DialogWrapper {
+    private final JPanel panel = new JPanel(new GridBagLayout());
+    private final TextFieldWithBrowseButton outputDir = new TextFieldWithBrowseButton();
+    private final Map<String, JCheckBox> formats = new LinkedHashMap<>();
+    private final JSpinner jSpinnerThreads;
+
+    public BulkGenerateDialog(Project project, int entryPoints) {
+        super(project, false);
+        setTitle("Generate Sequence Diagrams");
+
+        outputDir.addBrowseFolderListener("Output Directory", "Directory to write the diagrams to", project,
+                FileChooserDescriptorFactory.createSingleFolderDescriptor());
+        String basePath = project.getBasePath();
+        if (basePath != null)
+            outputDir.setText(new File(basePath, "sequence").getPath());
+
+        GridBagConstraints gc = new GridBagConstraints();
+        gc.gridx = 0;
+        gc.gridy = 0;
+        gc.gridwidth = 2;
+        gc.insets = JBUI.insets(5);
+        gc.anchor = GridBagConstraints.WEST;
+        panel.add(new JLabel(entryPoints + " public methods"), gc);
+
+        gc.gridy = 1;
+        gc.gridwidth = 1;
+        JLabel jLabelDir = new JLabel("Output directory:");
+        jLabelDir.setLabelFor(outputDir);
+        panel.add(jLabelDir, gc);
+        gc.gridx = 1;
+        gc.fill = GridBagConstraints.HORIZONTAL;
+        gc.weightx = 1;
+        panel.add(outputDir, gc);
+
+        gc.gridx = 0;
+        gc.gridy = 2;
+        gc.fill = GridBagConstraints.NONE;
+        gc.weightx = 0;
+        panel.add(new JLabel("Formats:"), gc);
+        JPanel formatPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        for (String format : BulkGenerator.FORMATS) {
+            JCheckBox checkBox = new JCheckBox(format, !"sdt".equals(format));
+            formats.put(format, checkBox);
+            formatPanel.add(checkBox);
+        }
+        gc.gridx = 1;
+        panel.add(formatPanel, gc);
+
+        gc.gridx = 0;
+        gc.gridy = 3;
+        JLabel jLabelThreads = new JLabel("Threads:");
+        panel.add(jLabelThreads, gc);
+        jSpinnerThreads = new JSpinner(new SpinnerNumberModel(BulkGenerator.DEFAULT_THREADS, 1,
+                Runtime.getRuntime().availableProcessors(), 1));
+        jLabelThreads.setLabelFor(jSpinnerThreads);
+        gc.gridx = 1;
+        panel.add(jSpinnerThreads, gc);
+
+        init();
+    }
+
+    @Override
+    protected JComponent createCenterPanel() {
+        return panel;
+    }
+
+    @Override
+    public JComponent getPreferredFocusedComponent() {
+        return outputDir.getTextField();
+    }
+
+    @Override
+    protected @Nullable ValidationInfo doValidate() {
+        if (outputDir.getText().trim().isEmpty())
+            return new ValidationInfo("Choose the output directory", outputDir);
+        if (getFormats().isEmpty())
+            return new ValidationInfo("Choose at least one format", formats.values().iterator().next());
+        return null;
+    }
+
+    public File getOutputDir() {
+        return new File(outputDir.getText().trim());
+    }
+
+    public List<String> getFormats() {
+        List<String> selected = new ArrayList<>();
+        formats.forEach((format, checkBox) -> {
+            if (checkBox.isSelected())
+                selected.add(format);
+        });
+        return selected;
+    }
+
+    public int getThreads() {
+        return (Integer) jSpinnerThreads.getValue();
+    }
+}
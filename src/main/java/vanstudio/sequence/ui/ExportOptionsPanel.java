@@ -0,0 +1,122 @@
+package vanstudio.sequence.ui;
+
+import com.intellij.util.ui.JBUI;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Accessory of the export file chooser with the options of the export: the part of the diagram
+ * to export and the pages.
+ */
+public class ExportOptionsPanel extends JPanel {
+    private static final int DEFAULT_PAGE_HEIGHT = 10000;
+
+    /**
+     * Part of the diagram to export.
+     */
+    public enum Scope {
+        ALL, VISIBLE, SELECTION, CALLS
+    }
+
+    private final Map<Scope, JRadioButton> scopes = new EnumMap<>(Scope.class);
+    private final JTextField jTextFieldCalls = new JTextField(8);
+    private final JCheckBox jCheckBoxPages;
+    private final JSpinner jSpinnerPageHeight;
+    private boolean pagesSupported;
+
+    /**
+     * @param hasSelection whether an activation or a call is selected
+     */
+    public ExportOptionsPanel(JFileChooser fileChooser, boolean hasSelection) {
+        super(new GridBagLayout());
+        setBorder(BorderFactory.createTitledBorder("Options"));
+        GridBagConstraints gc = new GridBagConstraints();
+        gc.gridx = 0;
+        gc.gridy = 0;
+        gc.gridwidth = 2;
+        gc.anchor = GridBagConstraints.WEST;
+
+        ButtonGroup group = new ButtonGroup();
+        addScope(Scope.ALL, "Whole diagram", group, gc);
+        addScope(Scope.VISIBLE, "Visible area", group, gc);
+        addScope(Scope.SELECTION, "Selected call", group, gc);
+        scopes.get(Scope.SELECTION).setEnabled(hasSelection);
+        gc.gridwidth = 1;
+        addScope(Scope.CALLS, "Calls:", group, gc);
+        scopes.get(Scope.ALL).setSelected(true);
+        gc.gridx = 1;
+        gc.gridy--;
+        jTextFieldCalls.setToolTipText("Numbers of the calls as in their tooltips, e.g. 3.2.* or 3.2-3.5");
+        add(jTextFieldCalls, gc);
+        scopes.get(Scope.CALLS).addItemListener(e -> jTextFieldCalls.setEnabled(scopes.get(Scope.CALLS).isSelected()));
+        jTextFieldCalls.setEnabled(false);
+
+        gc.gridx = 0;
+        gc.gridy++;
+        gc.gridwidth = 2;
+        jCheckBoxPages = new JCheckBox("Split into pages (png)", false);
+        add(jCheckBoxPages, gc);
+
+        gc.gridy++;
+        gc.gridwidth = 1;
+        gc.insets = JBUI.insets(5);
+        JLabel jLabel = new JLabel("Page height:");
+        add(jLabel, gc);
+
+        gc.gridx = 1;
+        jSpinnerPageHeight = new JSpinner(new SpinnerNumberModel(DEFAULT_PAGE_HEIGHT, 100, Integer.MAX_VALUE, 1000));
+        jLabel.setLabelFor(jSpinnerPageHeight);
+        add(jSpinnerPageHeight, gc);
+
+        jCheckBoxPages.addActionListener(e -> updateEnabled());
+        fileChooser.addPropertyChangeListener(JFileChooser.FILE_FILTER_CHANGED_PROPERTY,
+                e -> setFileFilter(fileChooser.getFileFilter()));
+        setFileFilter(fileChooser.getFileFilter());
+    }
+
+    private void addScope(Scope scope, String text, ButtonGroup group, GridBagConstraints gc) {
+        JRadioButton jRadioButton = new JRadioButton(text);
+        group.add(jRadioButton);
+        scopes.put(scope, jRadioButton);
+        add(jRadioButton, gc);
+        gc.gridy++;
+    }
+
+    private void setFileFilter(FileFilter fileFilter) {
+        pagesSupported = fileFilter instanceof FileNameExtensionFilter
+                && "png".equals(((FileNameExtensionFilter) fileFilter).getExtensions()[0]);
+        updateEnabled();
+    }
+
+    private void updateEnabled() {
+        jCheckBoxPages.setEnabled(pagesSupported);
+        jSpinnerPageHeight.setEnabled(pagesSupported && jCheckBoxPages.isSelected());
+    }
+
+    public Scope getScope() {
+        for (Map.Entry<Scope, JRadioButton> entry : scopes.entrySet()) {
+            if (entry.getValue().isSelected())
+                return entry.getKey();
+        }
+        return Scope.ALL;
+    }
+
+    /**
+     * @return the numbered calls to export when the scope is {@link Scope#CALLS}
+     */
+    public String getCalls() {
+        return jTextFieldCalls.getText().trim();
+    }
+
+    /**
+     * @return height in pixels of each page, 0 to export a single file
+     */
+    public int getPageHeight() {
+        return pagesSupported && jCheckBoxPages.isSelected() ? (Integer) jSpinnerPageHeight.getValue() : 0;
+    }
+}
@@ -0,0 +1,127 @@
+package vanstudio.sequence.util;
+
+import org.jetbrains.annotations.Nullable;
+import vanstudio.sequence.openapi.SequenceParams;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The excluded packages and classes of the settings in one trie of name segments, so that
+ * whether a class is excluded costs one walk over its name however many exclusions there are.
+ * <p>
+ * <code>a.b.*</code> excludes the classes of the package <code>a.b</code>, <code>a.b.**</code>
+ * those of <code>a.b</code> and of its sub-packages, but not of <code>a.bc</code>, and any other
+ * name excludes the class of that qualified name.
+ * <p>
+ * Immutable once built and safe to share between threads.
+ */
+public final class ExclusionTrie {
+    private final Node _root = new Node();
+    private final boolean _empty;
+    private final boolean _classes;
+
+    /**
+     * @param excludeNames the enabled exclusions of the settings
+     */
+    public ExclusionTrie(Collection<String> excludeNames) {
+        boolean classes = false;
+        for (String excludeName : excludeNames) {
+            if (excludeName.endsWith(SequenceParams.RECURSIVE_PACKAGE_INDICATOR)) {
+                find(excludeName.substring(0, excludeName.length() - SequenceParams.RECURSIVE_PACKAGE_INDICATOR.length()))
+                        .subPackages = true;
+            } else if (excludeName.endsWith(SequenceParams.PACKAGE_INDICATOR)) {
+                find(excludeName.substring(0, excludeName.length() - SequenceParams.PACKAGE_INDICATOR.length()))
+                        .classesOfPackage = true;
+            } else {
+                find(excludeName).cls = true;
+                classes = true;
+            }
+        }
+        _empty = excludeNames.isEmpty();
+        _classes = classes;
+    }
+
+    public boolean isEmpty() {
+        return _empty;
+    }
+
+    /**
+     * @return true if single classes are excluded, false if only packages are and whether a class
+     * is excluded depends on its package only
+     */
+    public boolean hasClasses() {
+        return _classes;
+    }
+
+    /**
+     * @param packageName the package of the class, or null if unknown
+     * @param className   the qualified name of the class, or null if unknown
+     * @return true if the package or the class is excluded
+     */
+    public boolean isExcluded(@Nullable String packageName, @Nullable String className) {
+        if (_empty)
+            return false;
+        if (className != null && packageName != null && isPackageOf(packageName, className))
+            return walk(className, packageName.length(), true);
+        return packageName != null && walk(packageName, packageName.length(), false)
+                || className != null && walk(className, -1, true);
+    }
+
+    private static boolean isPackageOf(String packageName, String className) {
+        return packageName.isEmpty()
+                || className.length() > packageName.length()
+                && className.startsWith(packageName)
+                && className.charAt(packageName.length()) == '.';
+    }
+
+    /**
+     * Walk the segments of the name, checking the package exclusions along its first
+     * <code>packageEnd</code> characters and the class exclusion at its end.
+     */
+    private boolean walk(String name, int packageEnd, boolean isClass) {
+        Node node = _root;
+        if (packageEnd >= 0 && (node.subPackages || packageEnd == 0 && node.classesOfPackage))
+            return true;
+        if (name.isEmpty())
+            return false;
+        int start = 0;
+        while (node.children != null) {
+            int end = name.indexOf('.', start);
+            if (end < 0)
+                end = name.length();
+            node = node.children.get(name.substring(start, end));
+            if (node == null)
+                return false;
+            if (end <= packageEnd && (node.subPackages || end == packageEnd && node.classesOfPackage))
+                return true;
+            if (end == name.length())
+                return isClass && node.cls;
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private Node find(String name) {
+        Node node = _root;
+        if (name.isEmpty())
+            return node;
+        for (String segment : name.split("\\.", -1)) {
+            if (node.children == null)
+                node.children = new HashMap<>();
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+        return node;
+    }
+
+    private static final class Node {
+        Map<String, Node> children;
+        /** <code>a.b.**</code> */
+        boolean subPackages;
+        /** <code>a.b.*</code> */
+        boolean classesOfPackage;
+        /** <code>a.b.C</code> */
+        boolean cls;
+    }
+}
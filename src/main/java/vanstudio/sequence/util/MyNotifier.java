@@ -26,6 +26,22 @@ public class MyNotifier {
                 .notify(project);
     }
 
+    /**
+     * Notify user with content, e.g. the outcome of a long task.
+     * @param project the project
+     * @param content the content max in three line, may have html tag as will
+     */
+    public static void notifyInfo(@Nullable Project project, String content) {
+        NotificationGroup registeredGroup = NotificationGroup.findRegisteredGroup(SequenceService.PLUGIN_NAME);
+        if (registeredGroup == null) return;
+
+        registeredGroup
+                .createNotification(content, NotificationType.INFORMATION)
+                .setTitle(SequenceService.PLUGIN_NAME)
+                .setIcon(SequencePluginIcons.SEQUENCE_ICON_13)
+                .notify(project);
+    }
+
     /**
      * Notify user with content and action.
      * @param project the project
@@ -0,0 +1,263 @@
+package vanstudio.sequence.util;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches qualified names against many rules at once. Each rule has an id, the order in which it
+ * was added, and {@link #match(String)} returns the lowest id of the rules matching a name.
+ * <p>
+ * Exact names, prefixes and wildcard patterns using <code>*</code> only are kept in a character
+ * trie where <code>*</code> is an edge looping on any character, so they are decided by one walk
+ * over the name, following the few trie nodes the name reaches at once. Patterns using other
+ * regex syntax are joined into one backtracking alternation, which tries them in the order of
+ * the rules, so a name missing them all costs one attempt per such pattern; they are expected to
+ * be rare. Results are remembered per name.
+ * <p>
+ * Immutable once built and safe to share between threads.
+ */
+public final class NameMatcher {
+    private static final Logger LOGGER = Logger.getInstance(NameMatcher.class);
+
+    public static final int NO_MATCH = -1;
+    private static final int MAX_CACHED_NAMES = 16384;
+    private static final String REGEX_CHARS = "\\[](){}?+^$|";
+
+    private final Node _trie;
+    /** null if no rule needs a regex */
+    private final Pattern _pattern;
+    /** capturing group of each regex rule, parallel to <code>_patternIds</code> */
+    private final int[] _groups;
+    private final int[] _patternIds;
+    private final boolean _empty;
+    private final Map<String, Integer> _cache = new ConcurrentHashMap<>();
+
+    private NameMatcher(Builder builder) {
+        _trie = builder._trie;
+        _empty = builder._empty;
+        int count = builder._patterns.size();
+        _groups = new int[count];
+        _patternIds = new int[count];
+        if (count == 0) {
+            _pattern = null;
+            return;
+        }
+        StringBuilder alternation = new StringBuilder();
+        int group = 1;
+        for (int i = 0; i < count; ++i) {
+            Pattern pattern = builder._patterns.get(i);
+            if (i > 0)
+                alternation.append('|');
+            alternation.append('(').append(pattern.pattern()).append(')');
+            _groups[i] = group;
+            _patternIds[i] = builder._patternIds.get(i);
+            group += 1 + pattern.matcher("").groupCount();
+        }
+        _pattern = Pattern.compile(alternation.toString());
+    }
+
+    public boolean isEmpty() {
+        return _empty;
+    }
+
+    /**
+     * @return the id of the first rule matching the name, or {@link #NO_MATCH}
+     */
+    public int match(@Nullable String name) {
+        if (name == null || _empty)
+            return NO_MATCH;
+        Integer cached = _cache.get(name);
+        if (cached != null)
+            return cached;
+        int id = computeMatch(name);
+        if (_cache.size() >= MAX_CACHED_NAMES)
+            _cache.clear();
+        _cache.put(name, id);
+        return id;
+    }
+
+    private int computeMatch(String name) {
+        int id = matchTrie(name);
+        if (_pattern != null) {
+            Matcher matcher = _pattern.matcher(name);
+            if (matcher.matches()) {
+                for (int i = 0; i < _groups.length; ++i) {
+                    if (matcher.start(_groups[i]) != -1) {
+                        id = min(id, _patternIds[i]);
+                        break;
+                    }
+                }
+            }
+        }
+        return id;
+    }
+
+    private int matchTrie(String name) {
+        int id = NO_MATCH;
+        List<Node> nodes = new ArrayList<>();
+        List<Node> next = new ArrayList<>();
+        reach(nodes, _trie);
+        for (int i = 0; !nodes.isEmpty(); ++i) {
+            for (Node node : nodes) {
+                id = min(id, node.prefixId);
+                if (i == name.length())
+                    id = min(id, node.exactId);
+            }
+            if (i == name.length())
+                break;
+            char c = name.charAt(i);
+            next.clear();
+            for (Node node : nodes) {
+                if (node.loop)
+                    reach(next, node);
+                Node child = node.children == null ? null : node.children.get(c);
+                if (child != null)
+                    reach(next, child);
+            }
+            List<Node> reached = nodes;
+            nodes = next;
+            next = reached;
+        }
+        return id;
+    }
+
+    /**
+     * Add the node and, as <code>*</code> also matches no text, the node after its <code>*</code>.
+     */
+    private static void reach(List<Node> nodes, Node node) {
+        if (nodes.contains(node))
+            return;
+        nodes.add(node);
+        if (node.star != null)
+            reach(nodes, node.star);
+    }
+
+    private static int min(int id, int other) {
+        if (id == NO_MATCH)
+            return other;
+        if (other == NO_MATCH)
+            return id;
+        return Math.min(id, other);
+    }
+
+    private static final class Node {
+        Map<Character, Node> children;
+        /** the node after a <code>*</code> following this one */
+        Node star;
+        /** true for a node after a <code>*</code>, which any character leads back to */
+        boolean loop;
+        int exactId = NO_MATCH;
+        int prefixId = NO_MATCH;
+
+        Node child(char c) {
+            if (c == '*')
+                return star();
+            if (children == null)
+                children = new HashMap<>();
+            return children.computeIfAbsent(c, k -> new Node());
+        }
+
+        private Node star() {
+            if (loop)
+                return this;
+            if (star == null) {
+                star = new Node();
+                star.loop = true;
+            }
+            return star;
+        }
+    }
+
+    public static final class Builder {
+        private final Node _trie = new Node();
+        private final List<Pattern> _patterns = new ArrayList<>();
+        private final List<Integer> _patternIds = new ArrayList<>();
+        private int _nextId;
+        private boolean _empty = true;
+
+        /**
+         * Add a rule matching exactly the name. A <code>*</code> in it matches any text.
+         */
+        public Builder addExact(String name) {
+            Node node = find(name);
+            if (node.exactId == NO_MATCH)
+                node.exactId = _nextId;
+            _empty = false;
+            ++_nextId;
+            return this;
+        }
+
+        /**
+         * Add a rule matching the names starting with the prefix, the prefix itself included.
+         */
+        public Builder addPrefix(String prefix) {
+            Node node = find(prefix);
+            if (node.prefixId == NO_MATCH)
+                node.prefixId = _nextId;
+            _empty = false;
+            ++_nextId;
+            return this;
+        }
+
+        /**
+         * Add a rule for a pattern of the colour mapping: <code>.</code> is a dot, <code>*</code>
+         * is any text and the rest is a regular expression that must match the whole name.
+         * A null or invalid pattern takes an id but matches nothing.
+         */
+        public Builder addWildcard(@Nullable String pattern) {
+            if (pattern == null) {
+                ++_nextId;
+                return this;
+            }
+            String literal = pattern;
+            while (literal.endsWith("*"))
+                literal = literal.substring(0, literal.length() - 1);
+            if (isLiteral(literal)) {
+                return literal.length() == pattern.length() ? addExact(literal) : addPrefix(literal);
+            }
+            if (isLiteral(pattern.replace("*", ""))) {
+                // any other pattern with * only is a path of the trie through its star nodes
+                return addExact(pattern);
+            }
+            try {
+                _patterns.add(Pattern.compile(pattern.replace(".", "\\.").replace("*", ".*")));
+                _patternIds.add(_nextId);
+                _empty = false;
+            } catch (PatternSyntaxException e) {
+                LOGGER.warn("Ignoring invalid pattern " + pattern, e);
+            }
+            ++_nextId;
+            return this;
+        }
+
+        public NameMatcher build() {
+            return new NameMatcher(this);
+        }
+
+        private Node find(String key) {
+            Node node = _trie;
+            for (int i = 0; i < key.length(); ++i) {
+                node = node.child(key.charAt(i));
+            }
+            return node;
+        }
+
+        private static boolean isLiteral(String text) {
+            for (int i = 0; i < text.length(); ++i) {
+                char c = text.charAt(i);
+                if (c == '*' || REGEX_CHARS.indexOf(c) >= 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package vanstudio.sequence.diagram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NumberingTest {
+
+    @Test
+    public void parse() {
+        assertEquals("3.2.10", Numbering.parse(" 3.2.10 ").getName());
+        assertEquals(3, Numbering.parse("3.2.10").level());
+        assertEquals(Numbering.parse("1.2"), Numbering.parse("1.2"));
+    }
+
+    @Test
+    public void parseRejectsOtherNames() {
+        assertNull(Numbering.parse(""));
+        assertNull(Numbering.parse("1."));
+        assertNull(Numbering.parse(".1"));
+        assertNull(Numbering.parse("1..2"));
+        assertNull(Numbering.parse("1.*"));
+        assertNull(Numbering.parse("-1"));
+        assertNull(Numbering.parse("1 .2"));
+        assertNull(Numbering.parse("1234567890"));
+        assertNull(Numbering.parse("\u0661"));
+    }
+
+    @Test
+    public void orderedLikeTheCalls() {
+        String[] calls = {"1", "1.1", "1.1.1", "1.2", "1.10", "2", "10"};
+        for (int i = 0; i < calls.length; ++i) {
+            for (int j = 0; j < calls.length; ++j) {
+                int compare = Numbering.parse(calls[i]).compareTo(Numbering.parse(calls[j]));
+                assertEquals(calls[i] + " " + calls[j], Integer.signum(Integer.compare(i, j)), Integer.signum(compare));
+            }
+        }
+    }
+
+    @Test
+    public void startsWith() {
+        assertTrue(Numbering.parse("1.2").startsWith(Numbering.parse("1.2")));
+        assertTrue(Numbering.parse("1.2.3").startsWith(Numbering.parse("1.2")));
+        assertFalse(Numbering.parse("1.20").startsWith(Numbering.parse("1.2")));
+        assertFalse(Numbering.parse("1").startsWith(Numbering.parse("1.2")));
+    }
+}
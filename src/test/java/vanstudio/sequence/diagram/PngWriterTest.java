@@ -0,0 +1,68 @@
+package vanstudio.sequence.diagram;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PngWriterTest {
+
+    @Test
+    public void alphaRoundTrip() throws IOException {
+        int[] pixels = pixels(300, 200, true);
+        BufferedImage image = writeAndRead(pixels, 300, 200, true);
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, image.getType());
+        assertArrayEquals(pixels, image.getRGB(0, 0, 300, 200, null, 0, 300));
+    }
+
+    @Test
+    public void opaqueRoundTrip() throws IOException {
+        int[] pixels = pixels(257, 131, false);
+        BufferedImage image = writeAndRead(pixels, 257, 131, false);
+        assertFalse(image.getColorModel().hasAlpha());
+        assertArrayEquals(pixels, image.getRGB(0, 0, 257, 131, null, 0, 257));
+    }
+
+    @Test(expected = IOException.class)
+    public void missingRows() throws IOException {
+        try (PngWriter writer = new PngWriter(new ByteArrayOutputStream(), 2, 2, false)) {
+            writer.writeRow(new int[2], 0);
+        }
+    }
+
+    /**
+     * Noise, so that the compressed data spans several IDAT chunks, with smooth areas for the
+     * other filters.
+     */
+    private static int[] pixels(int width, int height, boolean alpha) {
+        Random random = new Random(42);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int pixel = y < height / 2 ? random.nextInt() : (x * 7) << 16 | (y * 3) << 8 | (x + y);
+                pixels[y * width + x] = alpha ? pixel : pixel | 0xFF000000;
+            }
+        }
+        return pixels;
+    }
+
+    private static BufferedImage writeAndRead(int[] pixels, int width, int height, boolean alpha) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PngWriter writer = new PngWriter(out, width, height, alpha)) {
+            for (int y = 0; y < height; ++y) {
+                writer.writeRow(pixels, y * width);
+            }
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertNotNull(image);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        return image;
+    }
+}
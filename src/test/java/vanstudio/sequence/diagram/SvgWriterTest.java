@@ -0,0 +1,29 @@
+package vanstudio.sequence.diagram;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class SvgWriterTest {
+
+    @Test
+    public void escapeMarkup() throws IOException {
+        assertEquals("get(Map&lt;String, List&lt;Integer&gt;&gt;)", escape("get(Map<String, List<Integer>>)"));
+        assertEquals("a &amp;&amp; &quot;b&quot;", escape("a && \"b\""));
+        assertEquals("caf\u00e9()", escape("caf\u00e9()"));
+    }
+
+    @Test
+    public void escapeDropsCharactersXmlDoesNotAllow() throws IOException {
+        assertEquals("ab", escape("a\u0000\u0001b"));
+        assertEquals("a\tb\nc\r", escape("a\tb\nc\r"));
+    }
+
+    private static String escape(String text) throws IOException {
+        StringBuilder out = new StringBuilder();
+        SvgWriter.escape(out, text);
+        return out.toString();
+    }
+}
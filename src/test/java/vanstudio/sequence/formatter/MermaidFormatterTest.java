@@ -0,0 +1,31 @@
+package vanstudio.sequence.formatter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class MermaidFormatterTest {
+
+    @Test
+    public void escapeMarkup() throws IOException {
+        assertEquals("get(Map&lt;String, List&lt;Integer&gt;&gt;)", escape("get(Map<String, List<Integer>>)"));
+        assertEquals("a &amp;&amp; &quot;b&quot;", escape("a && \"b\""));
+        assertEquals("plain.call()", escape("plain.call()"));
+        assertEquals("", escape(""));
+    }
+
+    @Test
+    public void escapeNonAscii() throws IOException {
+        assertEquals("caf&#233;()", escape("caf\u00e9()"));
+        // a supplementary character is one reference, not two for its surrogates
+        assertEquals("x&#128512;y", escape("x\uD83D\uDE00y"));
+    }
+
+    private static String escape(String text) throws IOException {
+        StringBuilder out = new StringBuilder();
+        MermaidFormatter.escape(out, text);
+        return out.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package vanstudio.sequence.util;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExclusionTrieTest {
+
+    @Test
+    public void packagesAndClasses() {
+        ExclusionTrie trie = new ExclusionTrie(List.of("a.b.*", "c.**", "d.e.F", "g.h.**"));
+        assertTrue(trie.isExcluded("a.b", "a.b.C"));
+        assertTrue(trie.isExcluded("a.b", "a.b.C.Inner"));
+        assertFalse(trie.isExcluded("a.b.c", "a.b.c.D"));
+        assertFalse(trie.isExcluded("a", "a.B"));
+
+        assertTrue(trie.isExcluded("c", "c.D"));
+        assertTrue(trie.isExcluded("c.d.e", "c.d.e.F"));
+        assertFalse(trie.isExcluded("cd", "cd.E"));
+
+        assertTrue(trie.isExcluded("d.e", "d.e.F"));
+        assertFalse(trie.isExcluded("d.e", "d.e.G"));
+        assertFalse(trie.isExcluded("d.e", "d.e.F.Inner"));
+
+        assertTrue(trie.isExcluded("g.h", "g.h.I"));
+        assertFalse(trie.isExcluded("g", "g.H"));
+        assertFalse(trie.isExcluded("g.hi", "g.hi.J"));
+    }
+
+    @Test
+    public void hasClasses() {
+        assertFalse(new ExclusionTrie(List.of()).hasClasses());
+        assertFalse(new ExclusionTrie(List.of("a.b.*", "c.**")).hasClasses());
+        assertTrue(new ExclusionTrie(List.of("a.b.*", "d.e.F")).hasClasses());
+        assertTrue(new ExclusionTrie(List.of("Anonymous")).hasClasses());
+    }
+
+    @Test
+    public void unknownPackageOrClass() {
+        ExclusionTrie trie = new ExclusionTrie(List.of("a.b.*", "Anonymous"));
+        assertTrue(trie.isExcluded("a.b", null));
+        assertTrue(trie.isExcluded(null, "Anonymous"));
+        assertTrue(trie.isExcluded("x.y", "Anonymous"));
+        assertFalse(trie.isExcluded(null, "a.b.C"));
+        assertFalse(trie.isExcluded("", "C"));
+        assertFalse(trie.isExcluded(null, null));
+        assertTrue(new ExclusionTrie(List.of("C")).isExcluded("", "C"));
+    }
+
+    @Test
+    public void empty() {
+        ExclusionTrie trie = new ExclusionTrie(List.of());
+        assertTrue(trie.isEmpty());
+        assertFalse(trie.isExcluded("a", "a.B"));
+    }
+}
@@ -0,0 +1,73 @@
+package vanstudio.sequence.util;
+
+import org.junit.Test;
+import vanstudio.sequence.config.ColorMapEntry;
+
+import java.awt.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NameMatcherTest {
+
+    @Test
+    public void exactAndPrefix() {
+        NameMatcher matcher = new NameMatcher.Builder()
+                .addExact("a.b.C")
+                .addPrefix("a.b")
+                .addExact("a.b.D")
+                .build();
+        assertEquals(0, matcher.match("a.b.C"));
+        assertEquals(1, matcher.match("a.b.D"));
+        assertEquals(1, matcher.match("a.b"));
+        assertEquals(1, matcher.match("a.bc.E"));
+        assertEquals(NameMatcher.NO_MATCH, matcher.match("a.c.C"));
+        assertEquals(NameMatcher.NO_MATCH, matcher.match("a"));
+        assertEquals(NameMatcher.NO_MATCH, matcher.match(null));
+    }
+
+    @Test
+    public void wildcardsMatchLikeColorMapEntry() {
+        List<String> patterns = List.of("java.lang.String", "*Builder", "com.foo.*", "*.service.*Impl", "org.(x|y).*", "[");
+        NameMatcher.Builder builder = new NameMatcher.Builder();
+        patterns.forEach(builder::addWildcard);
+        NameMatcher matcher = builder.build();
+
+        for (String name : List.of("java.lang.String", "java.lang.StringBuilder", "com.foo.Bar", "com.foo",
+                "a.service.FooImpl", "org.x.Z", "org.z.Z", "com.foo.service.BarImpl", "other")) {
+            int expected = NameMatcher.NO_MATCH;
+            for (int i = 0; i < patterns.size() - 1 && expected == NameMatcher.NO_MATCH; ++i) {
+                if (new ColorMapEntry(patterns.get(i), Color.RED).matches(name))
+                    expected = i;
+            }
+            assertEquals(name, expected, matcher.match(name));
+            // again, from the cache
+            assertEquals(name, expected, matcher.match(name));
+        }
+    }
+
+    @Test
+    public void starsWalkTheTrie() {
+        List<String> patterns = List.of("a.*.C", "**Impl", "*.b*.*", "x*y*z", "a.b*");
+        NameMatcher.Builder builder = new NameMatcher.Builder();
+        patterns.forEach(builder::addWildcard);
+        NameMatcher matcher = builder.build();
+
+        for (String name : List.of("a.b.C", "a.C", "a..C", "a.x.y.C", "FooImpl", "Impl", "Imp", "q.bar.Z",
+                "q.bar", "xyz", "xaaybbz", "xzy", "a.b", "a.bc.D", "b")) {
+            int expected = NameMatcher.NO_MATCH;
+            for (int i = 0; i < patterns.size() && expected == NameMatcher.NO_MATCH; ++i) {
+                if (new ColorMapEntry(patterns.get(i), Color.RED).matches(name))
+                    expected = i;
+            }
+            assertEquals(name, expected, matcher.match(name));
+        }
+    }
+
+    @Test
+    public void empty() {
+        NameMatcher matcher = new NameMatcher.Builder().addWildcard(null).build();
+        assertTrue(matcher.isEmpty());
+        assertEquals(NameMatcher.NO_MATCH, matcher.match("a"));
+    }
+}